@@ -0,0 +1,131 @@
+package core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Hands over the sequences to a background thread in batches, the thread
+ * writes them to the wrapped sink and flushes it once the pending batches
+ * are written. The processing thread only copies the pages of a sequence.
+ *
+ * @author Murat Ali Bayir
+ */
+public class AsyncSequenceSink implements SequenceSink {
+
+	/**
+	 * The number of sequences handed over to the writer thread at once.
+	 */
+	public static int BATCH_SIZE = 4096;
+
+	/**
+	 * The number of batches that can wait for the writer thread before the
+	 * processing thread blocks.
+	 */
+	public static int QUEUE_CAPACITY = 16;
+
+	private static final List<PageIdList> END_OF_OUTPUT = new ArrayList<>();
+
+	private SequenceSink sink;
+	private BlockingQueue<List<PageIdList>> queue;
+	private List<PageIdList> pending;
+	private Thread writerThread;
+	private volatile Throwable failure;
+	private boolean closed;
+
+	public AsyncSequenceSink(SequenceSink sink) {
+		this.sink = sink;
+		this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		this.pending = new ArrayList<>(BATCH_SIZE);
+		this.writerThread = new Thread(this::writeBatches, "sequence-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	@Override
+	public void write(PageIdList pages) {
+		checkFailure();
+		pending.add(pages.copy());
+		if (pending.size() == BATCH_SIZE) {
+			put(pending);
+			pending = new ArrayList<>(BATCH_SIZE);
+		}
+	}
+
+	/**
+	 * Hands over the pending sequences, they are flushed by the writer thread
+	 * once they are written.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (!pending.isEmpty()) {
+			put(pending);
+			pending = new ArrayList<>(BATCH_SIZE);
+		}
+	}
+
+	/**
+	 * Waits until all sequences are written and closes the wrapped sink.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		flush();
+		put(END_OF_OUTPUT);
+		try {
+			writerThread.join();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException(exception);
+		}
+		sink.close();
+		if (failure != null) {
+			throw new IOException("Writing sequences failed", failure);
+		}
+	}
+
+	private void checkFailure() {
+		if (failure != null) {
+			throw new UncheckedIOException(new IOException("Writing sequences failed", failure));
+		}
+	}
+
+	private void put(List<PageIdList> batch) {
+		try {
+			queue.put(batch);
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	private void writeBatches() {
+		try {
+			List<PageIdList> batch;
+			while ((batch = queue.take()) != END_OF_OUTPUT) {
+				if (failure != null) {
+					// Keep draining so that the processing thread is never blocked.
+					continue;
+				}
+				try {
+					for (PageIdList pages : batch) {
+						sink.write(pages);
+					}
+					if (queue.isEmpty()) {
+						sink.flush();
+					}
+				} catch (IOException | RuntimeException exception) {
+					failure = exception;
+				}
+			}
+		} catch (InterruptedException exception) {
+			failure = exception;
+		}
+	}
+}
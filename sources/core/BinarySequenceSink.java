@@ -0,0 +1,137 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes the sequences in the binary sequence format read by
+ * {@link SequenceFileReader}:
+ *
+ * <pre>
+ * magic          "CSRASEQ1"
+ * page count     varint
+ * pages          varint byte length + UTF-8 bytes, in local id order
+ * sequence count varint
+ * sequences      varint length + varint local page ids
+ * </pre>
+ *
+ * Only the pages that occur in the written sequences are stored. Each page
+ * is given the next local id when it is written for the first time, so the
+ * header does not repeat the rest of {@link PageDictionary#getShared()} and
+ * most ids fit in one or two bytes. Since the pages are only known
+ * when all sequences are written, the sequences are written to a temporary
+ * file first and the file is assembled on {@link #close()}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class BinarySequenceSink implements SequenceSink {
+
+	/**
+	 * The extension of the output files that are written in the binary format,
+	 * see {@link SequenceSink#open(String)}.
+	 */
+	public static final String EXTENSION = ".seq";
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private File file;
+	private File bodyFile;
+	private DataOutputStream body;
+	private long sequenceCount;
+	private boolean closed;
+
+	/**
+	 * The local id + 1 of each shared id, zero for the pages not written yet.
+	 */
+	private int[] sharedToLocal;
+	private PageIdList localToShared;
+
+	public BinarySequenceSink(String fileName) throws FileNotFoundException {
+		this.file = new File(fileName);
+		this.bodyFile = new File(fileName + ".body");
+		this.body = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bodyFile), BUFFER_SIZE));
+		this.sequenceCount = 0;
+		this.sharedToLocal = new int[1024];
+		this.localToShared = new PageIdList();
+	}
+
+	private int toLocal(int page) {
+		if (page >= sharedToLocal.length) {
+			sharedToLocal = Arrays.copyOf(sharedToLocal, Math.max(page + 1, sharedToLocal.length * 2));
+		}
+		if (sharedToLocal[page] == 0) {
+			localToShared.addId(page);
+			sharedToLocal[page] = localToShared.size();
+		}
+		return sharedToLocal[page] - 1;
+	}
+
+	@Override
+	public void write(PageIdList pages) {
+		try {
+			writeVarint(body, pages.size());
+			for (int i = 0; i < pages.size(); i++) {
+				writeVarint(body, toLocal(pages.getId(i)));
+			}
+			sequenceCount++;
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		body.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		body.close();
+		PageDictionary dictionary = PageDictionary.getShared();
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+				InputStream input = new BufferedInputStream(new FileInputStream(bodyFile), BUFFER_SIZE)) {
+			output.write(SequenceFileReader.MAGIC);
+			int pageCount = localToShared.size();
+			writeVarint(output, pageCount);
+			for (int id = 0; id < pageCount; id++) {
+				byte[] page = dictionary.getPage(localToShared.getId(id)).getBytes(StandardCharsets.UTF_8);
+				writeVarint(output, page.length);
+				output.write(page);
+			}
+			writeVarint(output, sequenceCount);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int length;
+			while ((length = input.read(buffer)) > 0) {
+				output.write(buffer, 0, length);
+			}
+		} finally {
+			bodyFile.delete();
+		}
+	}
+
+	/**
+	 * Writes {@code value} in 7 bit groups, the lowest group first.
+	 */
+	static void writeVarint(OutputStream output, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			output.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		output.write((int) value);
+	}
+}
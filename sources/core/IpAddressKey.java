@@ -0,0 +1,254 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packs a client address into two longs so that it can be used as a
+ * primitive key. IPv6 addresses use all 128 bits, IPv4 addresses are stored
+ * as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d). Any other client field,
+ * like a host name, is given a sequential number under {@link #HOST_MARKER}.
+ * The IPv6 addresses whose high bits are {@link #HOST_MARKER}
+ * (ffff:ffff:ffff:ffff::/64) are numbered the same way, so a key under
+ * {@link #HOST_MARKER} is always a number and never clashes with an address.
+ *
+ * The numbers are kept by each instance, so they live as long as the session
+ * constructor that owns the instance. Instances are mutable and meant to be
+ * reused by a single parsing thread, only {@link #format(long, long)} can be
+ * called from other threads.
+ *
+ * @author Murat Ali Bayir
+ */
+public class IpAddressKey {
+
+	/**
+	 * The high bits of the keys of clients that are not ip addresses.
+	 */
+	public static final long HOST_MARKER = -1L;
+
+	private static final long IPV4_MAPPED = 0xFFFF00000000L;
+
+	private ConcurrentHashMap<String, Long> hostToId = new ConcurrentHashMap<>();
+	private List<String> idToHost = new ArrayList<>();
+
+	private long high;
+	private long low;
+	private int[] groups = new int[8];
+	private long[] words = new long[8];
+
+	// Only one of them is set while parsing.
+	private ByteBuffer buffer;
+	private String text;
+
+	public long getHigh() {
+		return high;
+	}
+
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * Parses the client address in the string.
+	 */
+	public void parse(String address) {
+		this.buffer = null;
+		this.text = address;
+		parse(0, address.length());
+		this.text = null;
+	}
+
+	/**
+	 * Parses the client address in [{@code start}, {@code end}) of the buffer
+	 * without creating a string unless the address is a host name.
+	 */
+	public void parse(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.text = null;
+		parse(start, end);
+		this.buffer = null;
+	}
+
+	/**
+	 * @return true if the key is a number given while parsing instead of an
+	 *         address, such keys are formatted by {@link #format(long, long)}.
+	 */
+	public static boolean isNumbered(long high) {
+		return high == HOST_MARKER;
+	}
+
+	/**
+	 * Formats the key back to the client address, the numbered keys are
+	 * formatted by the instance that parsed them.
+	 */
+	public String format(long high, long low) {
+		if (high == HOST_MARKER) {
+			synchronized (idToHost) {
+				return idToHost.get((int) low);
+			}
+		}
+		return formatAddress(high, low);
+	}
+
+	/**
+	 * Formats a key that is not numbered back to the client address.
+	 */
+	public static String formatAddress(long high, long low) {
+		if (high == 0 && (low >>> 32) == 0xFFFFL) {
+			return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+		}
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 8; i++) {
+			long word = i < 4 ? high : low;
+			if (i != 0) {
+				builder.append(':');
+			}
+			builder.append(Long.toHexString((word >>> (48 - 16 * (i % 4))) & 0xFFFF));
+		}
+		return builder.toString();
+	}
+
+	private char charAt(int index) {
+		return buffer != null ? (char) (buffer.get(index) & 0xFF) : text.charAt(index);
+	}
+
+	private void parse(int start, int end) {
+		long ipv4 = parseIpv4(start, end);
+		if (ipv4 >= 0) {
+			high = 0;
+			low = IPV4_MAPPED | ipv4;
+		} else if (!parseIpv6(start, end)) {
+			number(text != null ? text : substring(start, end));
+		} else if (high == HOST_MARKER) {
+			number(formatAddress(high, low));
+		}
+	}
+
+	private void number(String host) {
+		Long id = hostToId.get(host);
+		if (id == null) {
+			synchronized (idToHost) {
+				id = hostToId.get(host);
+				if (id == null) {
+					id = (long) idToHost.size();
+					idToHost.add(host);
+					hostToId.put(host, id);
+				}
+			}
+		}
+		high = HOST_MARKER;
+		low = id;
+	}
+
+	private String substring(int start, int end) {
+		StringBuilder builder = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			builder.append(charAt(i));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return the 32 bit address or -1 if [start, end) is not a dotted quad.
+	 */
+	private long parseIpv4(int start, int end) {
+		long result = 0;
+		int parts = 0;
+		int i = start;
+		while (i < end && parts < 4) {
+			int value = 0;
+			int digits = 0;
+			while (i < end && charAt(i) >= '0' && charAt(i) <= '9' && digits < 3) {
+				value = value * 10 + (charAt(i) - '0');
+				digits++;
+				i++;
+			}
+			if (digits == 0 || value > 255) {
+				return -1;
+			}
+			result = (result << 8) | value;
+			parts++;
+			if (parts < 4) {
+				if (i >= end || charAt(i) != '.') {
+					return -1;
+				}
+				i++;
+			}
+		}
+		return (parts == 4 && i == end) ? result : -1;
+	}
+
+	private boolean parseIpv6(int start, int end) {
+		int count = 0;
+		int gap = -1;
+		int i = start;
+		if (end - start >= 2 && charAt(start) == ':' && charAt(start + 1) == ':') {
+			gap = 0;
+			i = start + 2;
+		} else if (start >= end || charAt(start) == ':') {
+			return false;
+		}
+		while (i < end) {
+			int j = i;
+			int value = 0;
+			int digits = 0;
+			while (j < end && charAt(j) != ':') {
+				char current = charAt(j);
+				if (current == '.') {
+					// Embedded IPv4 address in the last 32 bits.
+					long ipv4 = parseIpv4(i, end);
+					if (ipv4 < 0 || count > 6) {
+						return false;
+					}
+					groups[count++] = (int) (ipv4 >>> 16);
+					groups[count++] = (int) (ipv4 & 0xFFFF);
+					return expand(count, gap);
+				}
+				int digit = Character.digit(current, 16);
+				if (digit < 0 || ++digits > 4) {
+					return false;
+				}
+				value = (value << 4) | digit;
+				j++;
+			}
+			if (digits == 0 || count == 8) {
+				return false;
+			}
+			groups[count++] = value;
+			if (j == end) {
+				break;
+			}
+			if (j + 1 < end && charAt(j + 1) == ':') {
+				if (gap >= 0) {
+					return false;
+				}
+				gap = count;
+				i = j + 2;
+			} else {
+				i = j + 1;
+				if (i == end) {
+					return false;
+				}
+			}
+		}
+		return expand(count, gap);
+	}
+
+	private boolean expand(int count, int gap) {
+		if ((gap < 0 && count != 8) || (gap >= 0 && count > 7)) {
+			return false;
+		}
+		for (int i = 0; i < words.length; i++) {
+			words[i] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			int target = (gap >= 0 && i >= gap) ? i + (8 - count) : i;
+			words[target] = groups[i];
+		}
+		high = (words[0] << 48) | (words[1] << 32) | (words[2] << 16) | words[3];
+		low = (words[4] << 48) | (words[5] << 32) | (words[6] << 16) | words[7];
+		return true;
+	}
+}
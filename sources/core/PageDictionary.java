@@ -0,0 +1,89 @@
+package core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each page url to a dense integer id. Pages are interned once while
+ * parsing and the rest of the pipeline carries the ids, the urls are decoded
+ * back only when results are written.
+ *
+ * Lookups are lock free, only interning a new page is synchronized.
+ *
+ * @author Murat Ali Bayir
+ */
+public class PageDictionary {
+
+	public static int NO_PAGE = -1;
+
+	private static PageDictionary shared = new PageDictionary();
+
+	private ConcurrentHashMap<String, Integer> pageToId;
+	private volatile String[] idToPage;
+	private int size;
+
+	public PageDictionary() {
+		pageToId = new ConcurrentHashMap<>();
+		idToPage = new String[1024];
+		size = 0;
+	}
+
+	/**
+	 * @return the dictionary shared by parsers, sessions, topology and patterns.
+	 */
+	public static PageDictionary getShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the id of the page, assigns the next id if the page is not
+	 * interned yet.
+	 *
+	 * @param page the page url
+	 * @return the id of the page
+	 */
+	public int getId(String page) {
+		Integer id = pageToId.get(page);
+		if (id != null) {
+			return id;
+		}
+		synchronized (this) {
+			id = pageToId.get(page);
+			if (id != null) {
+				return id;
+			}
+			String[] pages = idToPage;
+			if (size == pages.length) {
+				pages = Arrays.copyOf(pages, pages.length * 2);
+				idToPage = pages;
+			}
+			pages[size] = page;
+			pageToId.put(page, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * @param page the page url
+	 * @return the id of the page or {@link #NO_PAGE} if the page is not interned.
+	 */
+	public int lookup(String page) {
+		Integer id = pageToId.get(page);
+		return id != null ? id : NO_PAGE;
+	}
+
+	/**
+	 * @param id the id of the page
+	 * @return the url of the page
+	 */
+	public String getPage(int id) {
+		return idToPage[id];
+	}
+
+	/**
+	 * @return the number of interned pages.
+	 */
+	public int size() {
+		return pageToId.size();
+	}
+}
@@ -0,0 +1,179 @@
+package core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of pages that stores the page ids of {@link PageDictionary#getShared()}
+ * in a growable int array. It can be used wherever a list of page urls is
+ * expected, the urls are decoded only when an element is read.
+ *
+ * @author Murat Ali Bayir
+ */
+public class PageIdList extends AbstractList<String> implements RandomAccess {
+
+	private int[] ids;
+	private int size;
+
+	public PageIdList() {
+		this(8);
+	}
+
+	public PageIdList(int capacity) {
+		ids = new int[Math.max(1, capacity)];
+		size = 0;
+	}
+
+	/**
+	 * Creates the list of the given pages, each page is interned.
+	 */
+	public PageIdList(List<String> pages) {
+		this(pages.size());
+		if (pages instanceof PageIdList) {
+			PageIdList other = (PageIdList) pages;
+			System.arraycopy(other.ids, 0, ids, 0, other.size);
+			size = other.size;
+		} else {
+			for (int i = 0; i < pages.size(); i++) {
+				addId(PageDictionary.getShared().getId(pages.get(i)));
+			}
+		}
+	}
+
+	public int getId(int index) {
+		checkIndex(index);
+		return ids[index];
+	}
+
+	public void setId(int index, int id) {
+		checkIndex(index);
+		ids[index] = id;
+	}
+
+	public void addId(int id) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+		}
+		ids[size++] = id;
+	}
+
+	public int indexOfId(int id) {
+		for (int i = 0; i < size; i++) {
+			if (ids[i] == id) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean containsId(int id) {
+		return indexOfId(id) >= 0;
+	}
+
+	public int getLastId() {
+		return ids[size - 1];
+	}
+
+	/**
+	 * @return the ids of the pages as a new array.
+	 */
+	public int[] toIdArray() {
+		return Arrays.copyOf(ids, size);
+	}
+
+	public PageIdList copy() {
+		PageIdList copy = new PageIdList(size);
+		System.arraycopy(ids, 0, copy.ids, 0, size);
+		copy.size = size;
+		return copy;
+	}
+
+	@Override
+	public String get(int index) {
+		return PageDictionary.getShared().getPage(getId(index));
+	}
+
+	@Override
+	public String set(int index, String page) {
+		String previous = get(index);
+		ids[index] = PageDictionary.getShared().getId(page);
+		return previous;
+	}
+
+	@Override
+	public void add(int index, String page) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		addId(0);
+		System.arraycopy(ids, index, ids, index + 1, size - index - 1);
+		ids[index] = PageDictionary.getShared().getId(page);
+	}
+
+	@Override
+	public String remove(int index) {
+		String previous = get(index);
+		System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+		size--;
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		size = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int indexOf(Object page) {
+		if (!(page instanceof String)) {
+			return -1;
+		}
+		int id = PageDictionary.getShared().lookup((String) page);
+		return id == PageDictionary.NO_PAGE ? -1 : indexOfId(id);
+	}
+
+	@Override
+	public boolean contains(Object page) {
+		return indexOf(page) >= 0;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other instanceof PageIdList) {
+			PageIdList list = (PageIdList) other;
+			if (list.size != size) {
+				return false;
+			}
+			for (int i = 0; i < size; i++) {
+				if (ids[i] != list.ids[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return super.equals(other);
+	}
+
+	@Override
+	public int hashCode() {
+		// Same as the hash of the list of urls, urls cache their hash codes.
+		int result = 1;
+		for (int i = 0; i < size; i++) {
+			result = 31 * result + PageDictionary.getShared().getPage(ids[i]).hashCode();
+		}
+		return result;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+}
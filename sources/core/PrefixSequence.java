@@ -0,0 +1,98 @@
+package core;
+
+/**
+ * Persistent sequence of page ids where each sequence shares its prefix with
+ * the sequence it is extended from. Extending a sequence only creates a
+ * single node pointing to its parent, the pages are copied only when the
+ * sequence is materialized by {@link #toSequence()}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class PrefixSequence {
+
+	private final PrefixSequence parent;
+	private final int page;
+	private final int length;
+	private boolean isMaximal;
+	private int outDegree;
+	private int numberOfExtension;
+
+	/**
+	 * Creates the sequence that only contains {@code initialPage}.
+	 */
+	public PrefixSequence(int initialPage, int outDegree) {
+		this(null, initialPage, outDegree);
+	}
+
+	private PrefixSequence(PrefixSequence parent, int page, int outDegree) {
+		this.parent = parent;
+		this.page = page;
+		this.length = parent == null ? 1 : parent.length + 1;
+		this.isMaximal = true;
+		this.outDegree = outDegree;
+		this.numberOfExtension = 0;
+	}
+
+	/**
+	 * @return the new sequence that contains the pages of this sequence followed by {@code newPage}.
+	 */
+	public PrefixSequence extend(int newPage, int outDegree) {
+		return new PrefixSequence(this, newPage, outDegree);
+	}
+
+	public int getLastPageId() {
+		return page;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public boolean isMaximal() {
+		return isMaximal;
+	}
+
+	public void setMaximal(boolean isMaximal) {
+		this.isMaximal = isMaximal;
+	}
+
+	public int getOutDegree() {
+		return outDegree;
+	}
+
+	public int getNumberOfExtension() {
+		return numberOfExtension;
+	}
+
+	public void setNumberOfExtension(int numberOfExtension) {
+		this.numberOfExtension = numberOfExtension;
+	}
+
+	/**
+	 * @return the pages of the sequence from the first page to the last page.
+	 */
+	public PageIdList getPages() {
+		int[] ids = new int[length];
+		PrefixSequence current = this;
+		for (int i = length - 1; i >= 0; i--) {
+			ids[i] = current.page;
+			current = current.parent;
+		}
+		PageIdList pages = new PageIdList(length);
+		for (int i = 0; i < length; i++) {
+			pages.addId(ids[i]);
+		}
+		return pages;
+	}
+
+	/**
+	 * @return the materialized {@link Sequence} with the same pages and extension state.
+	 */
+	public Sequence toSequence() {
+		Sequence sequence = new Sequence(getPages());
+		sequence.setMaximal(isMaximal);
+		sequence.setOutDegree(outDegree);
+		sequence.setNumberOfExtension(numberOfExtension);
+		return sequence;
+	}
+}
@@ -1,17 +1,16 @@
 package core;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Contains a sequence of page views that forms path on
- * web graph. 
+ * web graph. Pages are stored as ids of {@link PageDictionary#getShared()}.
  * 
  * @author Murat Ali Bayir
  */
 public class Sequence implements Comparable<Sequence> {
 	
-	private List<String> sequence;
+	private PageIdList sequence;
 	private int length;
 	private boolean isMaximal;
 	private int outDegree;
@@ -21,7 +20,7 @@ public class Sequence implements Comparable<Sequence> {
 
 	private Sequence() {
 		super();
-		sequence = new ArrayList<>();
+		sequence = new PageIdList();
 		isMaximal = true;
 		outDegree = 0;
 		numberOfExtension = 0;
@@ -38,6 +37,16 @@ public class Sequence implements Comparable<Sequence> {
 		this.outDegree = outdegree;
 	}
 	
+	public Sequence(int initialPage) {
+		this();
+		sequence.addId(initialPage);
+	}
+	
+	public Sequence(int initialPage, int outdegree) {
+		this(initialPage);
+		this.outDegree = outdegree;
+	}
+	
 	public Sequence(String sequenceAsString, float penalty) {
 		this();
 		this.penalty = penalty;
@@ -49,9 +58,7 @@ public class Sequence implements Comparable<Sequence> {
 	
 	public Sequence(List<String> input) {
 		this();
-		for (int i = 0; i < input.size(); i++) {
-			sequence.add(input.get(i));
-		}
+		sequence = new PageIdList(input);
 	}
 
 	public float getPenalty() {
@@ -74,12 +81,16 @@ public class Sequence implements Comparable<Sequence> {
 		return sequence.get(sequence.size() - 1);
 	}
 	
-	public List<String> getSequence() {
+	public int getLastPageId() {
+		return sequence.getLastId();
+	}
+	
+	public PageIdList getSequence() {
 		return sequence;
 	}
 
 	public void setSequence(List<String> sequence) {
-		this.sequence = sequence;
+		this.sequence = sequence instanceof PageIdList ? (PageIdList) sequence : new PageIdList(sequence);
 	}
 
 	public int getLength() {
@@ -94,6 +105,10 @@ public class Sequence implements Comparable<Sequence> {
 		sequence.add(newPage);
 	}
 	
+	public void addPage(int newPage){
+		sequence.addId(newPage);
+	}
+	
 	public void setMaximal(boolean isMaximal) {
 		this.isMaximal = isMaximal;
 	}
@@ -120,9 +135,7 @@ public class Sequence implements Comparable<Sequence> {
 
 	public Sequence copy(){
 		Sequence tempSequence = new Sequence();
-		for (int i = 0; i < sequence.size(); i++) {
-			tempSequence.addPage(sequence.get(i));
-		}
+		tempSequence.sequence = sequence.copy();
 		tempSequence.setMaximal(this.isMaximal);
 		return tempSequence;
 	}
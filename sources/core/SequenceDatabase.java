@@ -0,0 +1,122 @@
+package core;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sequences held in memory in a compact form: the page ids of all sequences
+ * are stored one after another in a single int array, and the sequence i is
+ * {@code pages[offsets[i] .. offsets[i + 1])}. The file is read once by
+ * {@link SequenceFileReader}, so both text and binary sequence files can be
+ * loaded, and the sequences can be scanned any number of times without
+ * reading or splitting the file again.
+ *
+ * The pages are ids of {@link PageDictionary#getShared()}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SequenceDatabase {
+
+	private int[] pages;
+	private int[] offsets;
+	private int size;
+
+	private SequenceDatabase(int[] pages, int[] offsets, int size) {
+		this.pages = pages;
+		this.offsets = offsets;
+		this.size = size;
+	}
+
+	/**
+	 * Reads all sequences of a text or a binary sequence file.
+	 *
+	 * @param fileName the name of the sequence file
+	 * @return the sequences of the file
+	 * @throws IOException if the file can not be read or has more pages than
+	 *         an int array can hold
+	 */
+	public static SequenceDatabase load(String fileName) throws IOException {
+		int[] pages = new int[1 << 16];
+		int[] offsets = new int[1 << 12];
+		int pageCount = 0;
+		int size = 0;
+		try (SequenceFileReader reader = new SequenceFileReader(fileName)) {
+			PageIdList sequence;
+			while ((sequence = reader.next()) != null) {
+				int length = sequence.size();
+				if (pageCount > Integer.MAX_VALUE - 8 - length) {
+					throw new IOException(fileName + " has too many pages to be loaded in memory");
+				}
+				if (pageCount + length > pages.length) {
+					int capacity = (int) Math.min(Integer.MAX_VALUE - 8L,
+							Math.max((long) pages.length * 2, (long) pageCount + length));
+					pages = Arrays.copyOf(pages, capacity);
+				}
+				for (int i = 0; i < length; i++) {
+					pages[pageCount++] = sequence.getId(i);
+				}
+				if (size + 2 > offsets.length) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				offsets[++size] = pageCount;
+			}
+		}
+		return new SequenceDatabase(Arrays.copyOf(pages, pageCount), Arrays.copyOf(offsets, size + 1), size);
+	}
+
+	/**
+	 * @return the number of sequences.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the total number of pages in all sequences.
+	 */
+	public int getPageCount() {
+		return offsets[size];
+	}
+
+	/**
+	 * @return the index in {@link #getPages()} of the first page of the sequence {@code sequence}.
+	 */
+	public int getStart(int sequence) {
+		return offsets[sequence];
+	}
+
+	/**
+	 * @return the index in {@link #getPages()} after the last page of the sequence {@code sequence}.
+	 */
+	public int getEnd(int sequence) {
+		return offsets[sequence + 1];
+	}
+
+	/**
+	 * @return the number of pages of the sequence {@code sequence}.
+	 */
+	public int getLength(int sequence) {
+		return offsets[sequence + 1] - offsets[sequence];
+	}
+
+	/**
+	 * @return the page ids of all sequences, the array is not copied and
+	 *         must not be modified.
+	 */
+	public int[] getPages() {
+		return pages;
+	}
+
+	/**
+	 * @return the pages of the sequence {@code sequence} as a new list.
+	 */
+	public PageIdList getSequence(int sequence) {
+		int start = offsets[sequence];
+		int end = offsets[sequence + 1];
+		PageIdList list = new PageIdList(end - start);
+		for (int i = start; i < end; i++) {
+			list.addId(pages[i]);
+		}
+		return list;
+	}
+}
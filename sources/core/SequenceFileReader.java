@@ -0,0 +1,144 @@
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the sequences written by the session construction heuristics. Both
+ * the text format of {@link TextSequenceSink}, where each line contains the
+ * pages separated by '-', and the binary format of {@link BinarySequenceSink}
+ * are supported, the format is detected from the beginning of the file.
+ *
+ * The pages are returned as ids of {@link PageDictionary#getShared()}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SequenceFileReader implements Closeable {
+
+	/**
+	 * The first bytes of a binary sequence file.
+	 */
+	public static final byte[] MAGIC = "CSRASEQ1".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private PageDictionary dictionary;
+	private BufferedReader textReader;
+	private InputStream binaryInput;
+	private int[] localToShared;
+	private long remainingSequences;
+
+	public SequenceFileReader(String fileName) throws IOException {
+		this.dictionary = PageDictionary.getShared();
+		if (isBinary(fileName)) {
+			binaryInput = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+			readFully(new byte[MAGIC.length], MAGIC.length);
+			readHeader();
+		} else {
+			textReader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
+		}
+	}
+
+	/**
+	 * @return true if the file starts with {@link #MAGIC}.
+	 */
+	public static boolean isBinary(String fileName) throws IOException {
+		try (InputStream input = new FileInputStream(fileName)) {
+			byte[] head = new byte[MAGIC.length];
+			int length = 0;
+			int read;
+			while (length < head.length && (read = input.read(head, length, head.length - length)) > 0) {
+				length += read;
+			}
+			return length == head.length && Arrays.equals(head, MAGIC);
+		}
+	}
+
+	private void readHeader() throws IOException {
+		int pageCount = (int) readVarint();
+		localToShared = new int[pageCount];
+		byte[] buffer = new byte[256];
+		for (int i = 0; i < pageCount; i++) {
+			int length = (int) readVarint();
+			if (buffer.length < length) {
+				buffer = new byte[length];
+			}
+			readFully(buffer, length);
+			localToShared[i] = dictionary.getId(new String(buffer, 0, length, StandardCharsets.UTF_8));
+		}
+		remainingSequences = readVarint();
+	}
+
+	/**
+	 * @return the pages of the next sequence or null if there are no more sequences.
+	 */
+	public PageIdList next() throws IOException {
+		if (binaryInput != null) {
+			if (remainingSequences == 0) {
+				return null;
+			}
+			remainingSequences--;
+			int length = (int) readVarint();
+			PageIdList pages = new PageIdList(length);
+			for (int i = 0; i < length; i++) {
+				pages.addId(localToShared[(int) readVarint()]);
+			}
+			return pages;
+		}
+		String line = textReader.readLine();
+		if (line == null) {
+			return null;
+		}
+		String[] items = line.split("-");
+		PageIdList pages = new PageIdList(items.length);
+		for (int i = 0; i < items.length; i++) {
+			pages.addId(dictionary.getId(items[i].trim()));
+		}
+		return pages;
+	}
+
+	private long readVarint() throws IOException {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			int current = binaryInput.read();
+			if (current < 0) {
+				throw new EOFException("Truncated binary sequence file");
+			}
+			value |= (long) (current & 0x7F) << shift;
+			if ((current & 0x80) == 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int read = binaryInput.read(buffer, offset, length - offset);
+			if (read < 0) {
+				throw new EOFException("Truncated binary sequence file");
+			}
+			offset += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (binaryInput != null) {
+			binaryInput.close();
+		}
+		if (textReader != null) {
+			textReader.close();
+		}
+	}
+}
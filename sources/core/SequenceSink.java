@@ -0,0 +1,55 @@
+package core;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Destination of the sequences constructed by the session construction
+ * heuristics. Each session constructor owns its own sink.
+ *
+ * @author Murat Ali Bayir
+ */
+public interface SequenceSink extends Closeable {
+
+	/**
+	 * The sink that drops every sequence, used until a sink is set.
+	 */
+	SequenceSink DISCARD = new SequenceSink() {
+		@Override
+		public void write(PageIdList pages) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	/**
+	 * Opens an asynchronous sink that writes to {@code fileName} in the binary
+	 * format if the file name ends with {@link BinarySequenceSink#EXTENSION},
+	 * otherwise in the text format.
+	 */
+	static SequenceSink open(String fileName) throws FileNotFoundException {
+		SequenceSink sink = fileName.endsWith(BinarySequenceSink.EXTENSION)
+				? new BinarySequenceSink(fileName) : new TextSequenceSink(fileName);
+		return new AsyncSequenceSink(sink);
+	}
+
+	/**
+	 * Writes the pages of a single sequence. The sink does not keep a reference
+	 * to {@code pages} after the call returns.
+	 *
+	 * @throws java.io.UncheckedIOException if the sequence can not be written
+	 */
+	void write(PageIdList pages);
+
+	/**
+	 * Writes the buffered sequences to the underlying stream.
+	 */
+	void flush() throws IOException;
+}
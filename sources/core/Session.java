@@ -1,10 +1,10 @@
 package core;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Contains definition of single session for all heuristics.
+ * Contains definition of single session for all heuristics. Pages and
+ * referrers are stored as ids of {@link PageDictionary#getShared()}.
  * 
  * @author Murat Ali Bayir.
  *
@@ -12,8 +12,10 @@ import java.util.List;
 public class Session {
 
 	private String ipNumber;
-	private List<String> sequence;
-	private List<String> referenceSequence;
+	private long ipHigh;
+	private long ipLow;
+	private PageIdList sequence;
+	private PageIdList referenceSequence;
 	private long endTime;
 	private long initalTime;
 	private boolean isMaximal;
@@ -23,16 +25,51 @@ public class Session {
 	}
 
 	public Session(String ipNumber, String initalPage, long endTime, long initalTime, String initialReferrer, long id) {
-		super();
+		this(ipNumber, PageDictionary.getShared().getId(initalPage), endTime, initalTime,
+				PageDictionary.getShared().getId(initialReferrer), id);
+	}
+
+	public Session(String ipNumber, int initalPage, long endTime, long initalTime, int initialReferrer, long id) {
+		this(0, 0, initalPage, endTime, initalTime, initialReferrer, id);
 		this.ipNumber = ipNumber;
-		this.sequence = new ArrayList<>();
+	}
+
+	/**
+	 * Creates the session of the client with the packed address, see {@link IpAddressKey}.
+	 * The ip number is formatted only if it is asked for, the ip number of a numbered
+	 * key must be set by {@link #setIpNumber(String)}.
+	 */
+	public Session(long ipHigh, long ipLow, int initalPage, long endTime, long initalTime, int initialReferrer,
+			long id) {
+		super();
+		this.ipHigh = ipHigh;
+		this.ipLow = ipLow;
+		this.sequence = new PageIdList();
 		this.endTime = endTime;
 		this.initalTime = initalTime;
-		this.referenceSequence = new ArrayList<>();
+		this.referenceSequence = new PageIdList();
 		this.isMaximal = true;
 		this.id = id;
-		sequence.add(initalPage);
-		referenceSequence.add(initialReferrer);
+		sequence.addId(initalPage);
+		referenceSequence.addId(initialReferrer);
+	}
+
+	/**
+	 * @return a copy of the session whose page and referrer lists can be
+	 *         modified independently of this session.
+	 */
+	public Session copy() {
+		Session copy = new Session();
+		copy.ipNumber = ipNumber;
+		copy.ipHigh = ipHigh;
+		copy.ipLow = ipLow;
+		copy.sequence = sequence.copy();
+		copy.referenceSequence = referenceSequence.copy();
+		copy.endTime = endTime;
+		copy.initalTime = initalTime;
+		copy.isMaximal = isMaximal;
+		copy.id = id;
+		return copy;
 	}
 
 	public long getId() {
@@ -44,19 +81,30 @@ public class Session {
 	}
 
 	public String getIpNumber() {
+		if (ipNumber == null && (ipHigh != 0 || ipLow != 0)) {
+			ipNumber = IpAddressKey.formatAddress(ipHigh, ipLow);
+		}
 		return ipNumber;
 	}
 
+	public long getIpHigh() {
+		return ipHigh;
+	}
+
+	public long getIpLow() {
+		return ipLow;
+	}
+
 	public void setIpNumber(String ipNumber) {
 		this.ipNumber = ipNumber;
 	}
 
-	public List<String> getSequence() {
+	public PageIdList getSequence() {
 		return sequence;
 	}
 
 	public void setSequence(List<String> sequence) {
-		this.sequence = sequence;
+		this.sequence = sequence instanceof PageIdList ? (PageIdList) sequence : new PageIdList(sequence);
 	}
 
 	public long getEndTime() {
@@ -87,18 +135,23 @@ public class Session {
 		return sequence.contains(page);
 	}
 
-	public List<String> getRefSequence() {
+	public PageIdList getRefSequence() {
 		return referenceSequence;
 	}
 
 	public void setRefSequence(List<String> refSequence) {
-		this.referenceSequence = refSequence;
+		this.referenceSequence = refSequence instanceof PageIdList
+				? (PageIdList) refSequence : new PageIdList(refSequence);
 	}
 
 	public void appendPage(String newPage, String referrer, long newEnd) {
-		if (!sequence.contains(newPage)) {
-			sequence.add(newPage);
-			referenceSequence.add(referrer);
+		appendPage(PageDictionary.getShared().getId(newPage), PageDictionary.getShared().getId(referrer), newEnd);
+	}
+
+	public void appendPage(int newPage, int referrer, long newEnd) {
+		if (!sequence.containsId(newPage)) {
+			sequence.addId(newPage);
+			referenceSequence.addId(referrer);
 			endTime = newEnd;
 		}
 	}
@@ -112,9 +165,15 @@ public class Session {
 	}
 
 	public void removeItem(String item) {
-		int index = sequence.indexOf(item);
-		sequence.remove(item);
-		referenceSequence.remove(index);
+		removeItem(PageDictionary.getShared().lookup(item));
+	}
+
+	public void removeItem(int item) {
+		int index = sequence.indexOfId(item);
+		if (index >= 0) {
+			sequence.remove(index);
+			referenceSequence.remove(index);
+		}
 	}
 
 	public String getReferrer(String item) {
@@ -122,6 +181,16 @@ public class Session {
 		return index >= 0 ? referenceSequence.get(index) : null;
 	}
 
+	/**
+	 * @param item the id of the page
+	 * @return the id of the referrer of the page or {@link PageDictionary#NO_PAGE}
+	 *         if the page is not in the session.
+	 */
+	public int getReferrerId(int item) {
+		int index = sequence.indexOfId(item);
+		return index >= 0 ? referenceSequence.getId(index) : PageDictionary.NO_PAGE;
+	}
+
 	private String sequenceToString(List<String> list) {
 		StringBuffer buffer = new StringBuffer("");
 		for (int i = 0; i < list.size(); i++) {
@@ -146,7 +215,7 @@ public class Session {
 		StringBuffer buffer = new StringBuffer("");
 		buffer.append("Id: " + id);
 		buffer.append("\n");
-		buffer.append("IP: " + this.ipNumber);
+		buffer.append("IP: " + getIpNumber());
 		buffer.append("\n");
 		buffer.append("Sequence: " + sequenceToString(sequence));
 		buffer.append("\n");
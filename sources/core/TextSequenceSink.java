@@ -0,0 +1,60 @@
+package core;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes each sequence as a line of pages separated by '-', the format read
+ * by {@link pattern.SequentialApriori} and {@link session.SessionStats}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class TextSequenceSink implements SequenceSink {
+
+	/**
+	 * The size of the write buffer in characters.
+	 */
+	public static int BUFFER_SIZE = 1 << 20;
+
+	private BufferedWriter writer;
+	private PageDictionary dictionary;
+
+	public TextSequenceSink(String fileName) throws FileNotFoundException {
+		this(new FileOutputStream(fileName));
+	}
+
+	public TextSequenceSink(OutputStream outputStream) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(outputStream), BUFFER_SIZE);
+		this.dictionary = PageDictionary.getShared();
+	}
+
+	@Override
+	public void write(PageIdList pages) {
+		try {
+			for (int i = 0; i < pages.size(); i++) {
+				if (i != 0) {
+					writer.write('-');
+				}
+				writer.write(dictionary.getPage(pages.getId(i)));
+			}
+			writer.newLine();
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -12,19 +12,24 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
+import core.PageIdList;
 import core.Sequence;
 import pattern.Pattern;
 
+/**
+ * Predicts the next page of a sequence from the frequent patterns. Patterns,
+ * prefixes and predicted items are page ids, see {@link PageIdList}.
+ */
 public class BayesianPredictor {
 	/**
 	 * Stores pattern -> support pairs.
 	 */
-	private Hashtable<String, Float> patternToSupport;
+	private Hashtable<PageIdList, Float> patternToSupport;
 	
 	/**
 	 * Stores prefix -> pattern pairs.
 	 */
-	private Hashtable<String, Set<String>> prefixToPatternSet;
+	private Hashtable<PageIdList, Set<PageIdList>> prefixToPatternSet;
 	
 	/**
 	 * Stores the maximum number of predicted items.
@@ -57,8 +62,8 @@ public class BayesianPredictor {
 	}
 	
 	public BayesianPredictor(int numberOfPredictedItem,
-			Hashtable<String, Set<String>> prefixToPatternSet,
-			Hashtable<String, Float> patternToSupport) {
+			Hashtable<PageIdList, Set<PageIdList>> prefixToPatternSet,
+			Hashtable<PageIdList, Float> patternToSupport) {
 		this.numberOfPredictedItem = numberOfPredictedItem;
 		this.prefixToPatternSet = prefixToPatternSet;
 		this.patternToSupport = patternToSupport;
@@ -69,45 +74,42 @@ public class BayesianPredictor {
 	 * Returns the prefix of the given {@code pattern}. The prefix of pattern
 	 * 'Item{1}-Item{2}-...-Item{N}' is 'Item{1}-Item{2}-...-Item{N-1}'.
 	 */
-	private String getPrefix(String pattern){
-		String[] items = pattern.split("-");
-		StringBuffer buffer = new StringBuffer(items[0]);
-		for (int i = 1; i < (items.length - 1); i++) {
-			buffer.append("-");
-			buffer.append(items[i]);
+	private PageIdList getPrefix(PageIdList pattern){
+		PageIdList prefix = new PageIdList(pattern.size());
+		for (int i = 0; i < (pattern.size() - 1); i++) {
+			prefix.addId(pattern.getId(i));
 		}
-		return items.length > 1 ? buffer.toString() : "";
+		return prefix;
 	}
 
 	/**
 	 * Returns the last item of the pattern.
 	 */
-	private String getLast(String pattern) {
-		String[] items = pattern.split("-");
-		if(items.length >= 1) {
-			return items[items.length - 1];
-		} else {
-			return "";
-		}
+	private int getLast(PageIdList pattern) {
+		return pattern.getLastId();
 	}
 
 	/**
 	 * Returns the tail of the pattern.
 	 */
-	private String getTail(String pattern) {
+	private PageIdList getTail(PageIdList pattern) {
+		PageIdList tail = new PageIdList(pattern.size());
+		for (int i = 1; i < pattern.size(); i++) {
+			tail.addId(pattern.getId(i));
+		}
+		return tail;
+	}
+
+	/**
+	 * Parses the pattern 'Item{1}-Item{2}-...-Item{N}' into page ids.
+	 */
+	private PageIdList parsePattern(String pattern) {
 		String[] items = pattern.split("-");
-		if(items.length >= 2) {
-			StringBuffer buffer = new StringBuffer("");
-			for (int i = 1; i < items.length; i++) {
-				if (i != 1) {
-					buffer.append("-");
-				}
-				buffer.append(items[i].trim());
-			}
-			return buffer.toString();
-		} else {
-			return "";
+		PageIdList result = new PageIdList(items.length);
+		for (int i = 0; i < items.length; i++) {
+			result.add(items[i].trim());
 		}
+		return result;
 	}
 
 	/**
@@ -146,16 +148,16 @@ public class BayesianPredictor {
 	 * @param numberOfItems to determine how many patterns will be selected
 	 */
 	private void applySoftMaxAndSelect(
-			Hashtable<String, Float> candidateToSupport,
-			Set<String> result,
+			Hashtable<Integer, Float> candidateToSupport,
+			Set<Integer> result,
 			int numberOfItems) {
 		if (numberOfItems >= candidateToSupport.size())
 		{
-			for (String candidate : candidateToSupport.keySet()) {
+			for (Integer candidate : candidateToSupport.keySet()) {
 				result.add(candidate);
 			}
 		} else if (numberOfItems >= 1 && candidateToSupport.size() >= 1) {
-			String[] candidates = new String[candidateToSupport.size()];
+			Integer[] candidates = new Integer[candidateToSupport.size()];
 			candidateToSupport.keySet().toArray(candidates);
 			long[] values = new long[candidateToSupport.size()];
 			long totalSum = 0;
@@ -172,14 +174,14 @@ public class BayesianPredictor {
 		}
 	}
 
-	private String bringExistingTail(String sequence) {
-		if (prefixToPatternSet.containsKey(sequence.trim())) {
+	private PageIdList bringExistingTail(PageIdList sequence) {
+		if (prefixToPatternSet.containsKey(sequence)) {
 			return sequence;
 		} else {
 			int step = 1;
 			while(!prefixToPatternSet.containsKey(sequence) && !sequence.isEmpty()) {
 				if (step == maxTailCount) {
-					return "";
+					return new PageIdList();
 				}
 				sequence = getTail(sequence);
 				step++;
@@ -199,10 +201,10 @@ public class BayesianPredictor {
 			int start = input.getLength() - 1;
 			int end = input.getLength() - 1;
 			start = start - tailSize + 1;
-			List<String> sequence = new ArrayList<String>();
+			PageIdList sequence = new PageIdList(tailSize);
 			for (int i = start; i <= end; i++)
 			{
-				sequence.add(input.getSequence().get(i));
+				sequence.addId(input.getSequence().getId(i));
 			}
 			return new Sequence(sequence);
 		}
@@ -216,7 +218,7 @@ public class BayesianPredictor {
 				Sequence currentResult = GetTail(item, i);
 				if (currentResult != null)
 				{
-					if (prefixToPatternSet.containsKey(currentResult.toString().trim())) {
+					if (prefixToPatternSet.containsKey(currentResult.getSequence())) {
 						result.add(currentResult);
 					}
 				}
@@ -231,21 +233,21 @@ public class BayesianPredictor {
 	 * items for position Item{N+1}.
 	 * 
 	 * @param sequence the sequence for which the next item to be predicted
-	 * @return the set of possible items that can come after {@code sequence}
+	 * @return the ids of possible items that can come after {@code sequence}
 	 */
-	public Set<String> predictNextItem(List<Sequence> inputSequences, List<Pattern> matchedPatternsOutput) {
-		Set<String> result = new HashSet<>();
+	public Set<Integer> predictNextItem(List<Sequence> inputSequences, List<Pattern> matchedPatternsOutput) {
+		Set<Integer> result = new HashSet<>();
 		List<Sequence> sequences = bringExistingTail(inputSequences);
-		Hashtable<String, Float> candidateToSupportTable = new Hashtable<>();
+		Hashtable<Integer, Float> candidateToSupportTable = new Hashtable<>();
 		for (int i = 0; i < sequences.size(); i++) {
-			Sequence sequence = sequences.get(i);
-			if (prefixToPatternSet.containsKey(sequence.toString())) {
-				Set<String> matchedPatterns = prefixToPatternSet.get(sequence.toString());
-				Float tailSupport = patternToSupport.get(sequence.toString());
-				for (String matched : matchedPatterns) {
+			PageIdList sequence = sequences.get(i).getSequence();
+			if (prefixToPatternSet.containsKey(sequence)) {
+				Set<PageIdList> matchedPatterns = prefixToPatternSet.get(sequence);
+				Float tailSupport = patternToSupport.get(sequence);
+				for (PageIdList matched : matchedPatterns) {
 					Float support = patternToSupport.get(matched);
 					support = (support / tailSupport);
-					String candidateItem = getLast(matched);
+					Integer candidateItem = getLast(matched);
 					if (candidateToSupportTable.containsKey(candidateItem)) {
 						Float value = candidateToSupportTable.get(candidateItem);
 						value += support;
@@ -267,18 +269,18 @@ public class BayesianPredictor {
 	 * items for position Item{N+1}.
 	 * 
 	 * @param sequence the sequence for which the next item to be predicted
-	 * @return the set of possible items that can come after {@code sequence}
+	 * @return the ids of possible items that can come after {@code sequence}
 	 */
-	public Set<String> predictNextItem(String sequence, Set<String> matchedPatternsOutput) {
-		Set<String> result = new HashSet<>();
+	public Set<Integer> predictNextItem(PageIdList sequence, Set<PageIdList> matchedPatternsOutput) {
+		Set<Integer> result = new HashSet<>();
 		sequence = bringExistingTail(sequence);
-		if (prefixToPatternSet.containsKey(sequence) && !sequence.equals("")) {
-			Set<String> matchedPatterns = prefixToPatternSet.get(sequence);
+		if (prefixToPatternSet.containsKey(sequence) && !sequence.isEmpty()) {
+			Set<PageIdList> matchedPatterns = prefixToPatternSet.get(sequence);
 			matchedPatternsOutput.addAll(matchedPatterns);
-			Hashtable<String, Float> candidateToSupportTable = new Hashtable<>();
-			for (String matched : matchedPatterns) {
+			Hashtable<Integer, Float> candidateToSupportTable = new Hashtable<>();
+			for (PageIdList matched : matchedPatterns) {
 				Float support = patternToSupport.get(matched);
-				String candidateItem = getLast(matched);
+				Integer candidateItem = getLast(matched);
 				candidateToSupportTable.put(candidateItem, support);
 			}
 			applySoftMaxAndSelect(candidateToSupportTable, result, numberOfPredictedItem);
@@ -301,14 +303,14 @@ public class BayesianPredictor {
 		String supportAndPattern = null;
 		while ((supportAndPattern = br.readLine()) != null) {
 			String[] supportAndPatternArray = supportAndPattern.split(",");
-			String pattern = supportAndPatternArray[1].trim();
+			PageIdList pattern = parsePattern(supportAndPatternArray[1].trim());
 			Float support = Float.parseFloat(supportAndPatternArray[0].trim());
 			patternToSupport.put(pattern, support);
-			String prefix = getPrefix(pattern);
+			PageIdList prefix = getPrefix(pattern);
 			if (prefixToPatternSet.containsKey(prefix)) {
 				prefixToPatternSet.get(prefix).add(pattern);
 			} else {
-				Set<String> patterns = new HashSet<>();
+				Set<PageIdList> patterns = new HashSet<>();
 				patterns.add(pattern);
 				prefixToPatternSet.put(prefix, patterns);
 			}
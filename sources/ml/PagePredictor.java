@@ -7,7 +7,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
+import core.PageIdList;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 import pattern.Pattern;
 import session.CompleteSRA;
@@ -88,6 +90,19 @@ public class PagePredictor extends LinkBasedConstructor {
 		numberOfTrivialSequences = 0;
 	}
 	
+	/**
+	 * Sets the sequence sink of the predictor and the session constructors it uses.
+	 */
+	@Override
+	public void setSequenceSink(SequenceSink sequenceSink) {
+		super.setSequenceSink(sequenceSink);
+		for (SessionConstructor sessionConstructor : sessionConstructors) {
+			if (sessionConstructor != null) {
+				sessionConstructor.setSequenceSink(sequenceSink);
+			}
+		}
+	}
+
 	public void loadSessionGenerators() {
 		sessionConstructors[Algorithm.SmartSRA.id].setTopology(topology);
 		sessionConstructors[Algorithm.CSRA.id].setTopology(topology);
@@ -120,11 +135,11 @@ public class PagePredictor extends LinkBasedConstructor {
 	 * @return
 	 */
 	private Session cutSession(Session candidateSession, int cutPoint) {
-		List<String> visitedPages = new ArrayList<>();
-		List<String> referrers = new ArrayList<>();
+		PageIdList visitedPages = new PageIdList(cutPoint);
+		PageIdList referrers = new PageIdList(cutPoint);
 		for (int i = 0; i < cutPoint; i++) {
-			visitedPages.add(candidateSession.getSequence().get(i));
-			referrers.add(candidateSession.getRefSequence().get(i));
+			visitedPages.addId(candidateSession.getSequence().getId(i));
+			referrers.addId(candidateSession.getRefSequence().getId(i));
 		}
 		Session shortSession = new Session();
 		shortSession.setSequence(visitedPages);
@@ -135,11 +150,20 @@ public class PagePredictor extends LinkBasedConstructor {
 		return shortSession;
 	}
 	
+	/**
+	 * Returns the cut session for the algorithm, the algorithms that modify
+	 * the session are given their own copy.
+	 */
+	private Session getCutSession(Algorithm algo, Session[] cutSessions, int cutPoint) {
+		SessionConstructor constructor = sessionConstructors[algo.id];
+		return constructor.modifiesSession() ? cutSessions[cutPoint].copy() : cutSessions[cutPoint];
+	}
+
 	public void logFailingPrediction(
 			Algorithm algo,
 			List<Sequence> sequences,
 			List<Pattern> matchedPatterns,
-			Set<String> result) {
+			Set<Integer> result) {
 		System.out.println("**** " + algo +" Sequences***");
 		for (int i = 0; i < sequences.size(); i++) {
 			System.out.println(sequences.get(i).toString());
@@ -150,8 +174,8 @@ public class PagePredictor extends LinkBasedConstructor {
 			System.out.println(pattern.toPrint());
 		}
 		System.out.println("**** " + algo +" Results ***");
-		for (String prediction : result) {
-			System.out.println(prediction);
+		for (Integer prediction : result) {
+			System.out.println(dictionary.getPage(prediction));
 		}
 	}
 	
@@ -164,71 +188,76 @@ public class PagePredictor extends LinkBasedConstructor {
 	 * @param index
 	 */
 	private void predict(Session candidateSession, int index) {
-		String target = candidateSession.getSequence().get(index);
+		int target = candidateSession.getSequence().getId(index);
 		StringBuffer resultBuffer = new StringBuffer("");
+		// The cut sessions are shared by the algorithms.
+		Session[] cutSessions = new Session[index + 1];
+		for (int i = index; i >= 1; i--) {
+			cutSessions[i] = cutSession(candidateSession, i);
+		}
 		
 		List<Sequence> toSequences = new ArrayList<>();
 		for (int i = index; i >= 1; i--) {
-			Session cutSession = cutSession(candidateSession, i);
+			Session cutSession = getCutSession(Algorithm.TO, cutSessions, i);
 			float penalty = (float)Math.pow(PENALTY_COEFFICIENT, (index - i));
 			sessionConstructors[Algorithm.TO.id].processSessionForPrediction(cutSession, toSequences, false, penalty);
 		}
 		List<Pattern> toMatchedPatterns = new ArrayList<>();
-		Set<String> toSet = predictors[Algorithm.TO.id].predictNextItem(toSequences, toMatchedPatterns);
+		Set<Integer> toSet = predictors[Algorithm.TO.id].predictNextItem(toSequences, toMatchedPatterns);
 		emptyPredictor[Algorithm.TO.getId()] += toSet.isEmpty() ? 1 : 0;
-		successCount[Algorithm.TO.getId()] += toSet.contains(target.trim()) ? 1 : 0;
-		resultBuffer.append("[TO:" + (toSet.contains(target.trim()) ? 1 : 0) + ", ");
+		successCount[Algorithm.TO.getId()] += toSet.contains(target) ? 1 : 0;
+		resultBuffer.append("[TO:" + (toSet.contains(target) ? 1 : 0) + ", ");
 		
 		List<Sequence> smartSRASequences = new ArrayList<>();
 		for (int i = index; i >= 1; i--) {
-			Session cutSession = cutSession(candidateSession, i);
+			Session cutSession = getCutSession(Algorithm.SmartSRA, cutSessions, i);
 			float penalty = (float)Math.pow(PENALTY_COEFFICIENT, (index - i));
 			sessionConstructors[Algorithm.SmartSRA.id].processSession(cutSession, smartSRASequences, false, penalty);
 		}
 		List<Pattern> ssraMatchedPatterns = new ArrayList<>();
-		Set<String> ssraSet = predictors[Algorithm.SmartSRA.id].predictNextItem(smartSRASequences, ssraMatchedPatterns);
+		Set<Integer> ssraSet = predictors[Algorithm.SmartSRA.id].predictNextItem(smartSRASequences, ssraMatchedPatterns);
 		emptyPredictor[Algorithm.SmartSRA.getId()] += ssraSet.isEmpty() ? 1 : 0;
-		successCount[Algorithm.SmartSRA.getId()] += ssraSet.contains(target.trim()) ? 1 : 0;
-		resultBuffer.append("SSRA:" + (ssraSet.contains(target.trim()) ? 1 : 0) + ", ");
+		successCount[Algorithm.SmartSRA.getId()] += ssraSet.contains(target) ? 1 : 0;
+		resultBuffer.append("SSRA:" + (ssraSet.contains(target) ? 1 : 0) + ", ");
 
 		List<Sequence> csraSequences = new ArrayList<>();
 		for (int i = index; i >= 1; i--) {
-			Session cutSession = cutSession(candidateSession, i);
+			Session cutSession = getCutSession(Algorithm.CSRA, cutSessions, i);
 			float penalty = (float)Math.pow(PENALTY_COEFFICIENT, (index - i));
 			sessionConstructors[Algorithm.CSRA.id].processSession(cutSession, csraSequences, false, penalty);
 		}
 		List<Pattern> csraMatchedPatterns = new ArrayList<>();
-		Set<String> csraSet = predictors[Algorithm.CSRA.id].predictNextItem(csraSequences, csraMatchedPatterns);
+		Set<Integer> csraSet = predictors[Algorithm.CSRA.id].predictNextItem(csraSequences, csraMatchedPatterns);
 		emptyPredictor[Algorithm.CSRA.getId()] += csraSet.isEmpty() ? 1 : 0;
-		successCount[Algorithm.CSRA.getId()] += csraSet.contains(target.trim()) ? 1 : 0;
-		resultBuffer.append("CSRA:" + (csraSet.contains(target.trim()) ? 1 : 0) + ", ");		
+		successCount[Algorithm.CSRA.getId()] += csraSet.contains(target) ? 1 : 0;
+		resultBuffer.append("CSRA:" + (csraSet.contains(target) ? 1 : 0) + ", ");		
 
 		List<Sequence> ipSequences = new ArrayList<>();
 		for (int i = index; i >= 1; i--) {
-			Session cutSession = cutSession(candidateSession, i);
+			Session cutSession = getCutSession(Algorithm.IP, cutSessions, i);
 			float penalty = (float)Math.pow(PENALTY_COEFFICIENT, (index - i));
 			sessionConstructors[Algorithm.IP.id].processSession(cutSession, ipSequences, false, penalty);
 		}
 		List<Pattern> ipMatchedPatterns = new ArrayList<>();
-		Set<String> ipSet = predictors[Algorithm.IP.id].predictNextItem(ipSequences, ipMatchedPatterns);
+		Set<Integer> ipSet = predictors[Algorithm.IP.id].predictNextItem(ipSequences, ipMatchedPatterns);
 		emptyPredictor[Algorithm.IP.getId()] += ipSet.isEmpty() ? 1 : 0;
-		successCount[Algorithm.IP.getId()] += ipSet.contains(target.trim()) ? 1 : 0;
-		resultBuffer.append("IP:" + (ipSet.contains(target.trim()) ? 1 : 0) + ", ");		
+		successCount[Algorithm.IP.getId()] += ipSet.contains(target) ? 1 : 0;
+		resultBuffer.append("IP:" + (ipSet.contains(target) ? 1 : 0) + ", ");		
 		
 		List<Sequence> noSequences = new ArrayList<>();
 		for (int i = index; i >= 1; i--) {
-			Session cutSession = cutSession(candidateSession, i);
+			Session cutSession = getCutSession(Algorithm.NO, cutSessions, i);
 			float penalty = (float)Math.pow(PENALTY_COEFFICIENT, (index - i));
 			sessionConstructors[Algorithm.NO.id].processSession(cutSession, noSequences, false, penalty);
 		}
 		List<Pattern> noMatchedPatterns = new ArrayList<>();
-		Set<String> noSet = predictors[Algorithm.NO.id].predictNextItem(noSequences, noMatchedPatterns);
+		Set<Integer> noSet = predictors[Algorithm.NO.id].predictNextItem(noSequences, noMatchedPatterns);
 		emptyPredictor[Algorithm.NO.getId()] += noSet.isEmpty() ? 1 : 0;
-		successCount[Algorithm.NO.getId()] += noSet.contains(target.trim()) ? 1 : 0;
-		resultBuffer.append("NO:" + (noSet.contains(target.trim()) ? 1 : 0) + "]");
+		successCount[Algorithm.NO.getId()] += noSet.contains(target) ? 1 : 0;
+		resultBuffer.append("NO:" + (noSet.contains(target) ? 1 : 0) + "]");
 		
 		emptyPredictor[Algorithm.CTO.getId()] += (csraSet.isEmpty() && toSet.isEmpty()) ? 1 : 0;
-		successCount[Algorithm.CTO.getId()] += (csraSet.contains(target.trim()) || toSet.contains(target.trim())) ? 1 : 0;
+		successCount[Algorithm.CTO.getId()] += (csraSet.contains(target) || toSet.contains(target)) ? 1 : 0;
 		
 		numberOfTry++;
 	}
@@ -266,7 +295,7 @@ public class PagePredictor extends LinkBasedConstructor {
 	}
 
 	@Override
-	public void processSession(Session candidateSession,
+	protected void constructSequences(Session candidateSession,
 			List<Sequence> outputSequences, boolean skipSimpleSessions, float penalty) {
 		throw new UnsupportedOperationException();
 	}
@@ -306,7 +335,7 @@ public class PagePredictor extends LinkBasedConstructor {
 
 		try {
 			resultStream = new PrintStream(resultFile);
-			outputStream = new PrintStream(outputFile);
+			pagePredictor.setSequenceSink(SequenceSink.open(outputFile));
 			pagePredictor.loadTopology(topologyFile);
 			pagePredictor.loadSessionGenerators();
 			pagePredictor.loadModels(toPatterns, ssraPatterns, csraPatterns, ipPatterns, noPatterns);
@@ -316,7 +345,11 @@ public class PagePredictor extends LinkBasedConstructor {
 		System.out.println("processing files");
 		pagePredictor.ProcessFiles(inputFolder);
 		pagePredictor.printPerformance();
-	    outputStream.close();
+	    try {
+	    	pagePredictor.getSequenceSink().close();
+	    } catch (IOException exception) {
+	    	exception.printStackTrace();
+	    }
 	    resultStream.close();
 	}
 }
@@ -0,0 +1,38 @@
+package parsing;
+
+/**
+ * Contains the fields of a single access log record that are used by
+ * session construction algorithms.
+ * 
+ * @author Murat Ali Bayir
+ */
+public class AccessRecord {
+
+	private String ipNumber;
+	private String url;
+	private String referrerUrl;
+	private long accessTime;
+
+	public AccessRecord(String ipNumber, String url, String referrerUrl, long accessTime) {
+		this.ipNumber = ipNumber;
+		this.url = url;
+		this.referrerUrl = referrerUrl;
+		this.accessTime = accessTime;
+	}
+
+	public String getIpNumber() {
+		return ipNumber;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getReferrerUrl() {
+		return referrerUrl;
+	}
+
+	public long getAccessTime() {
+		return accessTime;
+	}
+}
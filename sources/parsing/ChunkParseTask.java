@@ -0,0 +1,53 @@
+package parsing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a line aligned byte range of an access log file on a fork join pool.
+ * The records that are skipped by the sequential parser are dropped, the rest
+ * is returned in file order.
+ * 
+ * @author Murat Ali Bayir
+ */
+public class ChunkParseTask extends RecursiveTask<List<AccessRecord>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private String fileName;
+	private String domainName;
+	private long startOffset;
+	private long endOffset;
+
+	public ChunkParseTask(String fileName, String domainName, long startOffset, long endOffset) {
+		this.fileName = fileName;
+		this.domainName = domainName;
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+	}
+
+	@Override
+	protected List<AccessRecord> compute() {
+		List<AccessRecord> records = new ArrayList<>();
+		try {
+			MappedLogReader reader = new MappedLogReader(fileName, startOffset, endOffset, domainName);
+			LogRecord record = new LogRecord();
+			try {
+				while (reader.next(record)) {
+					if (record.isValid() && !record.containsDash()) {
+						records.add(new AccessRecord(record.getIpNumber(), record.getUrl(),
+								record.getReferrerUrl(), record.getAccessTime()));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException exception) {
+			throw new UncheckedIOException(exception);
+		}
+		return records;
+	}
+}
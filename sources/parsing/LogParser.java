@@ -68,13 +68,22 @@ public class LogParser {
 			int hour  = Integer.parseInt(timeString.substring((firtColumn+1), secondColumn));
 			int min	  = Integer.parseInt(timeString.substring((secondColumn+1), thirdColumn));
 			int sec	  = Integer.parseInt(timeString.substring((thirdColumn+1), timeString.length()));
-			Date objDate = new Date(year,month,date,hour,min);
-			long minutes = (objDate.getTime()/(((1000))*60));
+			long minutes = (toMillis(year, month, date, hour, min)/(((1000))*60));
 			return minutes;
 		}
 			return -1;
 	}
 
+	/**
+	 * Converts the parsed fields of the access time to unix time miliseconds.
+	 * Shared by the string and the byte level parsers so both produce the same
+	 * access times.
+	 */
+	static long toMillis(int year, int month, int date, int hour, int min) {
+		Date objDate = new Date(year,month,date,hour,min);
+		return objDate.getTime();
+	}
+
 	public String getIPNumber(String recordLine){
 		String[] elements = recordLine.split("-");
 		if(elements.length > 0) {
@@ -0,0 +1,143 @@
+package parsing;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import core.IpAddressKey;
+
+/**
+ * Flyweight view of a single access log record inside a mapped log buffer.
+ * The record only keeps the offsets of its fields, the field values are
+ * materialized as strings when they are asked for.
+ *
+ * A single instance is meant to be reused for every line of the file, see
+ * {@link MappedLogReader#next(LogRecord)}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class LogRecord {
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private ByteBuffer buffer;
+	private boolean valid;
+	private boolean containsDash;
+	private boolean external;
+	private int ipStart;
+	private int ipEnd;
+	private int urlStart;
+	private int urlEnd;
+	private int referrerStart;
+	private int referrerEnd;
+	private long accessTime;
+	private byte[] scratch;
+
+	public LogRecord() {
+		scratch = new byte[256];
+	}
+
+	void reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.valid = false;
+		this.containsDash = false;
+		this.external = false;
+	}
+
+	void setIp(int start, int end) {
+		this.ipStart = start;
+		this.ipEnd = end;
+	}
+
+	void setUrl(int start, int end) {
+		this.urlStart = start;
+		this.urlEnd = end;
+	}
+
+	void setReferrer(int start, int end, boolean external) {
+		this.referrerStart = start;
+		this.referrerEnd = end;
+		this.external = external;
+	}
+
+	void setAccessTime(long accessTime) {
+		this.accessTime = accessTime;
+	}
+
+	void setContainsDash(boolean containsDash) {
+		this.containsDash = containsDash;
+	}
+
+	void setValid(boolean valid) {
+		this.valid = valid;
+	}
+
+	/**
+	 * @return true if all fields of the record could be located.
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return true if the visited or the referrer url contains '-', such
+	 *         records are skipped by session constructors.
+	 */
+	public boolean containsDash() {
+		return containsDash;
+	}
+
+	/**
+	 * @return access time in minutes, same as {@link LogParser#getAccessTime(String)}.
+	 */
+	public long getAccessTime() {
+		return accessTime;
+	}
+
+	/**
+	 * @return the ip number of the client, same as {@link LogParser#getIPNumber(String)}.
+	 */
+	public String getIpNumber() {
+		return decode(ipStart, ipEnd, false);
+	}
+
+	/**
+	 * Packs the ip number of the client into {@code key} without creating a string.
+	 */
+	public void parseIp(IpAddressKey key) {
+		key.parse(buffer, ipStart, ipEnd);
+	}
+
+	/**
+	 * @return the visited url without query string, same as applying
+	 *         {@link LogParser#getRawUrl(String)} to {@link LogParser#getUrl(String)}.
+	 */
+	public String getUrl() {
+		return decode(urlStart, urlEnd, true);
+	}
+
+	/**
+	 * @return the referrer url relative to the domain or
+	 *         {@link LogParser#EXTERNAL_PLACEHOLDER}, same as applying
+	 *         {@link LogParser#omitExternal(String)} to the raw referrer field.
+	 */
+	public String getReferrerUrl() {
+		if (external) {
+			return LogParser.EXTERNAL_PLACEHOLDER;
+		}
+		return referrerStart < referrerEnd ? decode(referrerStart, referrerEnd, false) : "/";
+	}
+
+	private String decode(int start, int end, boolean skipSpaces) {
+		if (scratch.length < (end - start)) {
+			scratch = new byte[end - start];
+		}
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte current = buffer.get(i);
+			if (!skipSpaces || current != ' ') {
+				scratch[length++] = current;
+			}
+		}
+		return new String(scratch, 0, length, CHARSET);
+	}
+}
@@ -0,0 +1,358 @@
+package parsing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads access log files over memory mapped buffers. Each line is scanned
+ * once for the space, dash, bracket and quote delimiters and the offsets of
+ * the fields are stored in a reusable {@link LogRecord}, so no string is
+ * created unless a field value is asked for.
+ *
+ * The semantics of the fields are the same as the ones of {@link LogParser}.
+ *
+ * @author Murat Ali Bayir
+ */
+public class MappedLogReader implements Closeable {
+
+	/**
+	 * The maximum size of a single mapped region of the file.
+	 */
+	public static long MAX_WINDOW_SIZE = 1L << 30;
+
+	private static final byte[] MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec".getBytes();
+
+	private FileChannel channel;
+	private long endOffset;
+	private long windowOffset;
+	private MappedByteBuffer window;
+	private int position;
+	private byte[] domain;
+	private int[] quotes = new int[4];
+
+	private int cachedYear = -1;
+	private int cachedMonth = -1;
+	private int cachedDate = -1;
+	private int cachedHour = -1;
+	private long cachedHourMillis;
+
+	/**
+	 * Opens a reader over the whole file.
+	 *
+	 * @param fileName the access log file
+	 * @param domainName the domain name like cnn.com
+	 * @throws IOException if the file can not be opened or mapped
+	 */
+	public MappedLogReader(String fileName, String domainName) throws IOException {
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		this.domain = domainName.getBytes(Charset.defaultCharset());
+		this.endOffset = channel.size();
+		map(0);
+	}
+
+	/**
+	 * Opens a reader over the lines in [{@code startOffset}, {@code endOffset}) of
+	 * the file. Both offsets are expected to be line boundaries, see
+	 * {@link #splitAtLineBoundaries(String, long)}.
+	 *
+	 * @param fileName the access log file
+	 * @param startOffset the offset of the first line to read
+	 * @param endOffset the offset after the last line to read
+	 * @param domainName the domain name like cnn.com
+	 * @throws IOException if the file can not be opened or mapped
+	 */
+	public MappedLogReader(String fileName, long startOffset, long endOffset, String domainName) throws IOException {
+		this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		this.domain = domainName.getBytes(Charset.defaultCharset());
+		this.endOffset = Math.min(endOffset, channel.size());
+		map(startOffset);
+	}
+
+	/**
+	 * Splits the file into ranges of roughly {@code chunkSize} bytes. Each
+	 * boundary is moved forward to the start of the next line, so no line is
+	 * shared by two ranges.
+	 *
+	 * @param fileName the access log file
+	 * @param chunkSize the target size of a single range in bytes
+	 * @return the range boundaries, range i is [boundaries[i], boundaries[i + 1])
+	 * @throws IOException if the file can not be read
+	 */
+	public static long[] splitAtLineBoundaries(String fileName, long chunkSize) throws IOException {
+		FileChannel fileChannel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			long size = fileChannel.size();
+			List<Long> boundaries = new ArrayList<>();
+			boundaries.add(0L);
+			ByteBuffer probe = ByteBuffer.allocate(4096);
+			long offset = chunkSize;
+			while (offset < size) {
+				long boundary = -1;
+				long readOffset = offset - 1;
+				while (boundary < 0 && readOffset < size) {
+					probe.clear();
+					int read = fileChannel.read(probe, readOffset);
+					if (read <= 0) {
+						break;
+					}
+					for (int i = 0; i < read; i++) {
+						if (probe.get(i) == '\n') {
+							boundary = readOffset + i + 1;
+							break;
+						}
+					}
+					readOffset += read;
+				}
+				if (boundary < 0 || boundary >= size) {
+					break;
+				}
+				boundaries.add(boundary);
+				offset = boundary + chunkSize;
+			}
+			boundaries.add(size);
+			long[] result = new long[boundaries.size()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = boundaries.get(i);
+			}
+			return result;
+		} finally {
+			fileChannel.close();
+		}
+	}
+
+	/**
+	 * Reads the next line into {@code record}. Lines whose fields can not be
+	 * located are still returned, but {@link LogRecord#isValid()} is false.
+	 *
+	 * @param record the flyweight record to fill
+	 * @return false if the end of the file is reached
+	 * @throws IOException if a line is longer than {@link #MAX_WINDOW_SIZE}
+	 */
+	public boolean next(LogRecord record) throws IOException {
+		if (windowOffset + position >= endOffset) {
+			return false;
+		}
+		int lineEnd = findLineEnd();
+		if (lineEnd < 0 && windowOffset + window.limit() < endOffset) {
+			map(windowOffset + position);
+			lineEnd = findLineEnd();
+			if (lineEnd < 0 && windowOffset + window.limit() < endOffset) {
+				throw new IOException("Line at offset " + windowOffset + " exceeds the mapped window size");
+			}
+		}
+		if (lineEnd < 0) {
+			lineEnd = window.limit();
+		}
+		int lineStart = position;
+		position = lineEnd + 1;
+		int end = lineEnd;
+		if (end > lineStart && window.get(end - 1) == '\r') {
+			end--;
+		}
+		parseLine(record, lineStart, end);
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+	private void map(long offset) throws IOException {
+		long size = Math.min(MAX_WINDOW_SIZE, endOffset - offset);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+		windowOffset = offset;
+		position = 0;
+	}
+
+	private int findLineEnd() {
+		int limit = window.limit();
+		for (int i = position; i < limit; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(byte target, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (window.get(i) == target) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private boolean contains(byte target, int start, int end) {
+		return indexOf(target, start, end) != -1;
+	}
+
+	private int indexOfDomain(int start, int end) {
+		for (int i = start; i <= end - domain.length; i++) {
+			int j = 0;
+			while (j < domain.length && window.get(i + j) == domain[j]) {
+				j++;
+			}
+			if (j == domain.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void parseLine(LogRecord record, int start, int end) {
+		record.reset(window);
+		int dash = -1;
+		int openBracket = -1;
+		int closeBracket = -1;
+		int quoteCount = 0;
+		for (int i = start; i < end; i++) {
+			byte current = window.get(i);
+			if (current == '-') {
+				if (dash < 0) {
+					dash = i;
+				}
+			} else if (current == '[') {
+				if (openBracket < 0) {
+					openBracket = i;
+				}
+			} else if (current == ']') {
+				if (closeBracket < 0) {
+					closeBracket = i;
+				}
+			} else if (current == '"' && quoteCount < quotes.length) {
+				quotes[quoteCount++] = i;
+			}
+		}
+		if (dash <= start || openBracket < 0 || closeBracket < openBracket || quoteCount < quotes.length) {
+			return;
+		}
+		record.setIp(start, dash - 1);
+
+		// Visited url: tokens between the method and the protocol.
+		int requestStart = quotes[0] + 1;
+		int requestEnd = quotes[1];
+		while (requestEnd > requestStart && window.get(requestEnd - 1) == ' ') {
+			requestEnd--;
+		}
+		int firstSpace = indexOf((byte) ' ', requestStart, requestEnd);
+		int lastSpace = firstSpace;
+		for (int i = requestEnd - 1; i > firstSpace; i--) {
+			if (window.get(i) == ' ') {
+				lastSpace = i;
+				break;
+			}
+		}
+		if (firstSpace < 0 || lastSpace == firstSpace) {
+			return;
+		}
+		boolean hasUrl = false;
+		for (int i = firstSpace + 1; i < lastSpace && !hasUrl; i++) {
+			hasUrl = window.get(i) != ' ';
+		}
+		if (!hasUrl) {
+			return;
+		}
+		int urlEnd = indexOf((byte) '?', firstSpace + 1, lastSpace);
+		urlEnd = urlEnd < 0 ? lastSpace : urlEnd;
+		record.setUrl(firstSpace + 1, urlEnd);
+		boolean containsDash = contains((byte) '-', firstSpace + 1, urlEnd);
+
+		// Referrer: relative to the domain or external.
+		int referrerEnd = indexOf((byte) '?', quotes[2] + 1, quotes[3]);
+		referrerEnd = referrerEnd < 0 ? quotes[3] : referrerEnd;
+		int domainStart = indexOfDomain(quotes[2] + 1, referrerEnd);
+		if (domainStart < 0) {
+			record.setReferrer(0, 0, true);
+		} else {
+			int referrerStart = domainStart + domain.length;
+			if (referrerStart < referrerEnd && window.get(referrerStart) == '/') {
+				referrerStart++;
+			}
+			record.setReferrer(referrerStart, referrerEnd, false);
+			containsDash = containsDash || contains((byte) '-', referrerStart, referrerEnd);
+		}
+		record.setContainsDash(containsDash);
+
+		long accessTime = parseAccessTime(openBracket + 1, closeBracket);
+		if (accessTime == Long.MIN_VALUE) {
+			return;
+		}
+		record.setAccessTime(accessTime);
+		record.setValid(true);
+	}
+
+	/**
+	 * Parses '01/Apr/2008:03:05:14 -0500' without creating any string.
+	 *
+	 * @return the access time in minutes or {@link Long#MIN_VALUE} if the
+	 *         field is malformed.
+	 */
+	private long parseAccessTime(int start, int end) {
+		int space = indexOf((byte) ' ', start, end);
+		end = space < 0 ? end : space;
+		int firstSlash = indexOf((byte) '/', start, end);
+		int secondSlash = firstSlash < 0 ? -1 : indexOf((byte) '/', firstSlash + 1, end);
+		int firstColumn = secondSlash < 0 ? -1 : indexOf((byte) ':', secondSlash + 1, end);
+		int secondColumn = firstColumn < 0 ? -1 : indexOf((byte) ':', firstColumn + 1, end);
+		int thirdColumn = secondColumn < 0 ? -1 : indexOf((byte) ':', secondColumn + 1, end);
+		if (thirdColumn < 0) {
+			return Long.MIN_VALUE;
+		}
+		int date = parseNumber(start, firstSlash);
+		int month = parseMonth(firstSlash + 1, secondSlash);
+		int year = parseNumber(secondSlash + 1, firstColumn);
+		int hour = parseNumber(firstColumn + 1, secondColumn);
+		int min = parseNumber(secondColumn + 1, thirdColumn);
+		int sec = parseNumber(thirdColumn + 1, end);
+		if (date < 0 || year < 0 || hour < 0 || min < 0 || sec < 0) {
+			return Long.MIN_VALUE;
+		}
+		if (year != cachedYear || month != cachedMonth || date != cachedDate || hour != cachedHour) {
+			cachedYear = year;
+			cachedMonth = month;
+			cachedDate = date;
+			cachedHour = hour;
+			cachedHourMillis = LogParser.toMillis(year, month, date, hour, 0);
+		}
+		return (cachedHourMillis + min * 60000L) / (1000 * 60);
+	}
+
+	private int parseNumber(int start, int end) {
+		if (start >= end) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			byte current = window.get(i);
+			if (current < '0' || current > '9') {
+				return -1;
+			}
+			value = value * 10 + (current - '0');
+		}
+		return value;
+	}
+
+	private int parseMonth(int start, int end) {
+		if (end - start != 3) {
+			return -1;
+		}
+		for (int i = 0; i < MONTHS.length; i += 3) {
+			if (window.get(start) == MONTHS[i] && window.get(start + 1) == MONTHS[i + 1]
+					&& window.get(start + 2) == MONTHS[i + 2]) {
+				return i / 3;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,180 @@
+package parsing;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges several access log files, each of them ordered by access time, into
+ * a single access time ordered stream of records. The files are read lazily,
+ * at most {@code readAhead} parsed records are buffered per file.
+ *
+ * Records with the same access time are returned in the order of the files
+ * in the input list.
+ *
+ * @author Murat Ali Bayir
+ */
+public class TimeOrderedLogMerger implements Closeable {
+
+	private static final Comparator<FileCursor> HEAD_ORDER = new Comparator<FileCursor>() {
+		@Override
+		public int compare(FileCursor first, FileCursor second) {
+			int result = Long.compare(first.peek().getAccessTime(), second.peek().getAccessTime());
+			return result != 0 ? result : Integer.compare(first.index, second.index);
+		}
+	};
+
+	private PriorityQueue<FileCursor> heap;
+	private FileCursor[] cursors;
+
+	/**
+	 * @param fileNames the log files to merge
+	 * @param domainName the domain name like cnn.com
+	 * @param readAhead the maximum number of buffered records per file
+	 * @param useMappedParser whether to parse files with {@link MappedLogReader}
+	 * @throws IOException if any of the files can not be opened
+	 */
+	public TimeOrderedLogMerger(List<String> fileNames, String domainName, int readAhead, boolean useMappedParser)
+			throws IOException {
+		heap = new PriorityQueue<>(Math.max(1, fileNames.size()), HEAD_ORDER);
+		cursors = new FileCursor[fileNames.size()];
+		try {
+			for (int i = 0; i < fileNames.size(); i++) {
+				cursors[i] = new FileCursor(i, fileNames.get(i), domainName, readAhead, useMappedParser);
+				if (cursors[i].fill()) {
+					heap.add(cursors[i]);
+				}
+			}
+		} catch (IOException exception) {
+			close();
+			throw exception;
+		}
+	}
+
+	public boolean hasNext() {
+		return !heap.isEmpty();
+	}
+
+	/**
+	 * @return the record with the smallest access time among all files.
+	 * @throws IOException if an error occurs while reading the next records
+	 */
+	public AccessRecord next() throws IOException {
+		FileCursor cursor = heap.poll();
+		AccessRecord record = cursor.poll();
+		if (cursor.fill()) {
+			heap.add(cursor);
+		}
+		return record;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (int i = 0; i < cursors.length; i++) {
+			if (cursors[i] != null) {
+				cursors[i].close();
+			}
+		}
+	}
+
+	/**
+	 * Buffered reader of records of a single log file.
+	 */
+	private static class FileCursor {
+
+		private int index;
+		private int readAhead;
+		private ArrayDeque<AccessRecord> buffer;
+		private boolean exhausted;
+
+		private MappedLogReader mappedReader;
+		private LogRecord record;
+		private BufferedReader lineReader;
+		private LogParser parser;
+
+		FileCursor(int index, String fileName, String domainName, int readAhead, boolean useMappedParser)
+				throws IOException {
+			this.index = index;
+			this.readAhead = Math.max(1, readAhead);
+			this.buffer = new ArrayDeque<>(this.readAhead);
+			if (useMappedParser) {
+				mappedReader = new MappedLogReader(fileName, domainName);
+				record = new LogRecord();
+			} else {
+				lineReader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName)));
+				parser = new LogParser(domainName);
+			}
+		}
+
+		AccessRecord peek() {
+			return buffer.peekFirst();
+		}
+
+		AccessRecord poll() {
+			return buffer.pollFirst();
+		}
+
+		/**
+		 * Refills the buffer once it is drained.
+		 *
+		 * @return false if there is no record left in the file
+		 */
+		boolean fill() throws IOException {
+			if (buffer.isEmpty()) {
+				while (buffer.size() < readAhead && !exhausted) {
+					AccessRecord next = mappedReader != null ? readMapped() : readLine();
+					if (next != null) {
+						buffer.addLast(next);
+					}
+				}
+			}
+			return !buffer.isEmpty();
+		}
+
+		private AccessRecord readMapped() throws IOException {
+			if (!mappedReader.next(record)) {
+				exhausted = true;
+				return null;
+			}
+			if (!record.isValid() || record.containsDash()) {
+				return null;
+			}
+			return new AccessRecord(record.getIpNumber(), record.getUrl(), record.getReferrerUrl(),
+					record.getAccessTime());
+		}
+
+		private AccessRecord readLine() throws IOException {
+			String strLine = lineReader.readLine();
+			if (strLine == null) {
+				exhausted = true;
+				return null;
+			}
+			String url = parser.getUrl(strLine);
+			if (url == null) {
+				return null;
+			}
+			String visitedUrl = parser.getRawUrl(url);
+			String referenceUrl = parser.omitExternal(parser.getRawUrl(parser.getReferrerField(strLine)));
+			if (visitedUrl.indexOf("-") != -1 || referenceUrl.indexOf("-") != -1) {
+				return null;
+			}
+			return new AccessRecord(parser.getIPNumber(strLine), visitedUrl, referenceUrl,
+					parser.getAccessTime(strLine));
+		}
+
+		void close() throws IOException {
+			if (mappedReader != null) {
+				mappedReader.close();
+			}
+			if (lineReader != null) {
+				lineReader.close();
+			}
+		}
+	}
+}
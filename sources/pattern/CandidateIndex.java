@@ -0,0 +1,69 @@
+package pattern;
+
+import core.PageIdList;
+import core.SequenceDatabase;
+
+/**
+ * Candidate patterns of the same length that count their own support over a
+ * {@link SequenceDatabase}. The candidates are numbered from zero in the
+ * order they are added, and the counts are kept by candidate index.
+ *
+ * The candidates are only read while the support is counted, so
+ * {@link #countSupport(SequenceDatabase, int, int, long[], int[])} can be
+ * called from several threads with their own counters.
+ *
+ * @author Murat Ali Bayir
+ */
+public interface CandidateIndex {
+
+	/**
+	 * Adds a candidate unless it is already in the index.
+	 *
+	 * @param candidate the pages of the candidate, its size must be the candidate length
+	 * @return true if the candidate is added
+	 */
+	boolean add(PageIdList candidate);
+
+	/**
+	 * @return the number of candidates.
+	 */
+	int size();
+
+	/**
+	 * @return the number of pages of the candidates.
+	 */
+	int getLength();
+
+	/**
+	 * @return the pages of the candidate at {@code index} as a new list.
+	 */
+	PageIdList getCandidate(int index);
+
+	/**
+	 * @return the number of sequences that contain the candidate at {@code index}.
+	 */
+	long getCount(int index);
+
+	/**
+	 * Adds {@code sequenceCounts[i]} to the count of the candidate at index i.
+	 */
+	void addCounts(long[] sequenceCounts);
+
+	/**
+	 * Counts the sequences of {@code database} that contain each candidate.
+	 */
+	void countSupport(SequenceDatabase database);
+
+	/**
+	 * Counts the sequences in {@code [from, to)} that contain each candidate.
+	 *
+	 * @param database the sequences
+	 * @param from the index of the first sequence
+	 * @param to the index after the last sequence
+	 * @param sequenceCounts the counts of the candidates, by candidate index
+	 * @param stamps the last sequence + 1 counted for each candidate, zero
+	 *        initially; it must not be shared with a count of a sequence range
+	 *        overlapping this one.
+	 */
+	void countSupport(SequenceDatabase database, int from, int to, long[] sequenceCounts, int[] stamps);
+}
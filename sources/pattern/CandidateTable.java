@@ -0,0 +1,207 @@
+package pattern;
+
+import java.util.Arrays;
+
+import core.PageIdList;
+import core.SequenceDatabase;
+
+/**
+ * Candidate patterns of the same length for support counting. The page ids
+ * of the candidates are stored one after another in a single int array and
+ * the candidates are found by a polynomial hash of their ids in an open
+ * addressing table with linear probing.
+ *
+ * The support is counted by sliding a window of the candidate length over
+ * each sequence of a {@link SequenceDatabase}. The hash of the window is
+ * rolled by one page at each step, so a window is looked up without building
+ * its n-gram, and each candidate is stamped with the last sequence that
+ * contains it, so a candidate is counted once per sequence. Counting does not
+ * allocate.
+ *
+ * @author Murat Ali Bayir
+ */
+public class CandidateTable implements CandidateIndex {
+
+	private static final long BASE = 0x9E3779B97F4A7C15L;
+
+	private int length;
+	private int[] pages;
+	private long[] hashes;
+	private long[] counts;
+	private int size;
+
+	/**
+	 * The index of the candidate in each slot, -1 for an empty slot.
+	 */
+	private int[] slots;
+	private int mask;
+
+	/**
+	 * {@link #BASE} to the power of {@link #length}, removes the page leaving
+	 * the window from the hash.
+	 */
+	private long basePower;
+
+	/**
+	 * @param length the number of pages of the candidates
+	 */
+	public CandidateTable(int length) {
+		this.length = length;
+		pages = new int[16 * length];
+		hashes = new long[16];
+		counts = new long[16];
+		slots = new int[32];
+		mask = slots.length - 1;
+		Arrays.fill(slots, -1);
+		basePower = 1;
+		for (int i = 0; i < length; i++) {
+			basePower *= BASE;
+		}
+	}
+
+	private static long mix(long hash) {
+		hash ^= (hash >>> 33);
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+
+	@Override
+	public boolean add(PageIdList candidate) {
+		if (candidate.size() != length) {
+			throw new IllegalArgumentException("Candidate length " + candidate.size() + " is not " + length);
+		}
+		long hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = hash * BASE + candidate.getId(i) + 1;
+		}
+		int slot = (int) mix(hash) & mask;
+		while (slots[slot] >= 0) {
+			int index = slots[slot];
+			if (hashes[index] == hash && isCandidate(index, candidate)) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == hashes.length) {
+			pages = Arrays.copyOf(pages, pages.length * 2);
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			counts = Arrays.copyOf(counts, counts.length * 2);
+		}
+		for (int i = 0; i < length; i++) {
+			pages[size * length + i] = candidate.getId(i);
+		}
+		hashes[size] = hash;
+		slots[slot] = size;
+		size++;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return true;
+	}
+
+	private boolean isCandidate(int index, PageIdList candidate) {
+		int start = index * length;
+		for (int i = 0; i < length; i++) {
+			if (pages[start + i] != candidate.getId(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		mask = slots.length - 1;
+		Arrays.fill(slots, -1);
+		for (int index = 0; index < size; index++) {
+			int slot = (int) mix(hashes[index]) & mask;
+			while (slots[slot] >= 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = index;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public PageIdList getCandidate(int index) {
+		PageIdList candidate = new PageIdList(length);
+		for (int i = 0; i < length; i++) {
+			candidate.addId(pages[index * length + i]);
+		}
+		return candidate;
+	}
+
+	@Override
+	public long getCount(int index) {
+		return counts[index];
+	}
+
+	@Override
+	public void addCounts(long[] sequenceCounts) {
+		for (int i = 0; i < size; i++) {
+			counts[i] += sequenceCounts[i];
+		}
+	}
+
+	@Override
+	public void countSupport(SequenceDatabase database) {
+		countSupport(database, 0, database.size(), counts, new int[size]);
+	}
+
+	@Override
+	public void countSupport(SequenceDatabase database, int from, int to, long[] sequenceCounts, int[] stamps) {
+		int[] sequencePages = database.getPages();
+		for (int sequence = from; sequence < to; sequence++) {
+			int start = database.getStart(sequence);
+			int end = database.getEnd(sequence);
+			if (end - start < length) {
+				continue;
+			}
+			int stamp = sequence + 1;
+			long hash = 0;
+			for (int i = start; i < start + length; i++) {
+				hash = hash * BASE + sequencePages[i] + 1;
+			}
+			for (int i = start;; i++) {
+				int slot = (int) mix(hash) & mask;
+				int index;
+				while ((index = slots[slot]) >= 0) {
+					if (hashes[index] == hash && isWindow(index, sequencePages, i)) {
+						if (stamps[index] != stamp) {
+							stamps[index] = stamp;
+							sequenceCounts[index]++;
+						}
+						break;
+					}
+					slot = (slot + 1) & mask;
+				}
+				if (i + length == end) {
+					break;
+				}
+				hash = hash * BASE + sequencePages[i + length] + 1 - (sequencePages[i] + 1) * basePower;
+			}
+		}
+	}
+
+	private boolean isWindow(int index, int[] sequencePages, int windowStart) {
+		int start = index * length;
+		for (int i = 0; i < length; i++) {
+			if (pages[start + i] != sequencePages[windowStart + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,214 @@
+package pattern;
+
+import java.util.Arrays;
+
+import core.PageIdList;
+import core.SequenceDatabase;
+
+/**
+ * Candidate patterns of the same length in a prefix trie keyed by page ids.
+ * The edges of all nodes are kept in a single open addressing table keyed by
+ * the parent node and the page id packed into a long, and the node at the
+ * depth of the candidate length holds the index of its candidate.
+ *
+ * The support is counted by walking the trie from each position of a
+ * sequence. The walk stops as soon as the pages read so far are not a prefix
+ * of any candidate, so most positions are left after one or two lookups
+ * without reading the whole window. Each candidate is stamped with the last
+ * sequence that contains it, so a candidate is counted once per sequence.
+ * Counting does not allocate.
+ *
+ * @author Murat Ali Bayir
+ */
+public class CandidateTrie implements CandidateIndex {
+
+	private static final long EMPTY = -1L;
+
+	private static final int ROOT = 0;
+
+	private int length;
+	private int[] pages;
+	private long[] counts;
+	private int size;
+
+	/**
+	 * The index of the candidate of each node, -1 for the nodes above the candidate length.
+	 */
+	private int[] nodeCandidates;
+	private int nodeCount;
+
+	/**
+	 * The parent node and the page id of each edge, {@link #EMPTY} for an empty slot.
+	 */
+	private long[] edgeKeys;
+	private int[] edgeChildren;
+	private int edgeCount;
+	private int mask;
+
+	/**
+	 * @param length the number of pages of the candidates
+	 */
+	public CandidateTrie(int length) {
+		this.length = length;
+		pages = new int[16 * length];
+		counts = new long[16];
+		nodeCandidates = new int[64];
+		Arrays.fill(nodeCandidates, -1);
+		nodeCount = 1;
+		edgeKeys = new long[128];
+		edgeChildren = new int[128];
+		mask = edgeKeys.length - 1;
+		Arrays.fill(edgeKeys, EMPTY);
+	}
+
+	private static long pack(int node, int page) {
+		return ((long) node << 32) | (page & 0xFFFFFFFFL);
+	}
+
+	private static int mix(long key) {
+		key ^= (key >>> 33);
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= (key >>> 33);
+		return (int) key;
+	}
+
+	/**
+	 * @return the child of {@code node} on the edge of {@code page}, -1 if there is no such edge.
+	 */
+	private int getChild(int node, int page) {
+		long key = pack(node, page);
+		int slot = mix(key) & mask;
+		long current;
+		while ((current = edgeKeys[slot]) != EMPTY) {
+			if (current == key) {
+				return edgeChildren[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int addChild(int node, int page) {
+		if (nodeCount == nodeCandidates.length) {
+			nodeCandidates = Arrays.copyOf(nodeCandidates, nodeCandidates.length * 2);
+			Arrays.fill(nodeCandidates, nodeCount, nodeCandidates.length, -1);
+		}
+		int child = nodeCount++;
+		long key = pack(node, page);
+		int slot = mix(key) & mask;
+		while (edgeKeys[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		edgeKeys[slot] = key;
+		edgeChildren[slot] = child;
+		edgeCount++;
+		if (edgeCount * 2 > edgeKeys.length) {
+			rehash();
+		}
+		return child;
+	}
+
+	private void rehash() {
+		long[] oldKeys = edgeKeys;
+		int[] oldChildren = edgeChildren;
+		edgeKeys = new long[oldKeys.length * 2];
+		edgeChildren = new int[oldKeys.length * 2];
+		mask = edgeKeys.length - 1;
+		Arrays.fill(edgeKeys, EMPTY);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = mix(oldKeys[i]) & mask;
+				while (edgeKeys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				edgeKeys[slot] = oldKeys[i];
+				edgeChildren[slot] = oldChildren[i];
+			}
+		}
+	}
+
+	@Override
+	public boolean add(PageIdList candidate) {
+		if (candidate.size() != length) {
+			throw new IllegalArgumentException("Candidate length " + candidate.size() + " is not " + length);
+		}
+		int node = ROOT;
+		for (int i = 0; i < length; i++) {
+			int child = getChild(node, candidate.getId(i));
+			node = child >= 0 ? child : addChild(node, candidate.getId(i));
+		}
+		if (nodeCandidates[node] >= 0) {
+			return false;
+		}
+
+		if (size == counts.length) {
+			pages = Arrays.copyOf(pages, pages.length * 2);
+			counts = Arrays.copyOf(counts, counts.length * 2);
+		}
+		for (int i = 0; i < length; i++) {
+			pages[size * length + i] = candidate.getId(i);
+		}
+		nodeCandidates[node] = size;
+		size++;
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getLength() {
+		return length;
+	}
+
+	@Override
+	public PageIdList getCandidate(int index) {
+		PageIdList candidate = new PageIdList(length);
+		for (int i = 0; i < length; i++) {
+			candidate.addId(pages[index * length + i]);
+		}
+		return candidate;
+	}
+
+	@Override
+	public long getCount(int index) {
+		return counts[index];
+	}
+
+	@Override
+	public void addCounts(long[] sequenceCounts) {
+		for (int i = 0; i < size; i++) {
+			counts[i] += sequenceCounts[i];
+		}
+	}
+
+	@Override
+	public void countSupport(SequenceDatabase database) {
+		countSupport(database, 0, database.size(), counts, new int[size]);
+	}
+
+	@Override
+	public void countSupport(SequenceDatabase database, int from, int to, long[] sequenceCounts, int[] stamps) {
+		int[] sequencePages = database.getPages();
+		for (int sequence = from; sequence < to; sequence++) {
+			int start = database.getStart(sequence);
+			int end = database.getEnd(sequence);
+			int stamp = sequence + 1;
+			for (int i = start; i + length <= end; i++) {
+				int node = ROOT;
+				for (int depth = 0; depth < length && node >= 0; depth++) {
+					node = getChild(node, sequencePages[i + depth]);
+				}
+				if (node >= 0) {
+					int index = nodeCandidates[node];
+					if (stamps[index] != stamp) {
+						stamps[index] = stamp;
+						sequenceCounts[index]++;
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,21 +1,23 @@
 package pattern;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import core.PageIdList;
+
 /**
- * This class is the basic definition of the pattern object
+ * This class is the basic definition of the pattern object. Items are stored
+ * as page ids, see {@link PageIdList}.
  * 
  * @author Murat Ali Bayir
  */
 public class Pattern implements Comparable<Pattern> {
-	private List<String> sequence;
+	private PageIdList sequence;
 	private float support;
 	private boolean maximal;
 
 	public Pattern() {
 		super();
-		sequence = new ArrayList<>();
+		sequence = new PageIdList();
 		support = 0.0f;
 		maximal = true;
 	}
@@ -30,12 +32,12 @@ public class Pattern implements Comparable<Pattern> {
 		this.maximal = maximal;
 	}
 
-	public List<String> getSequence() {
+	public PageIdList getSequence() {
 		return sequence;
 	}
 
 	public void setSequence(List<String> sequence) {
-		this.sequence = sequence;
+		this.sequence = sequence instanceof PageIdList ? (PageIdList) sequence : new PageIdList(sequence);
 	}
 
 	public float getSupport() {
@@ -149,9 +151,7 @@ public class Pattern implements Comparable<Pattern> {
 
 	public Pattern copy() {
 		Pattern tempPattern = new Pattern();
-		for (int i = 0; i < sequence.size(); i++) {
-			tempPattern.getSequence().add(sequence.get(i));
-		}
+		tempPattern.sequence = sequence.copy();
 		tempPattern.setMaximal(isMaximal());
 		return tempPattern;
 	}
@@ -1,24 +1,75 @@
 package pattern;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import core.PageDictionary;
+import core.PageIdList;
+import core.SequenceDatabase;
 import utils.Utils;
 
 public class SequentialApriori {
 	
 	public static int MIN_LENGTH	= 1;
+
+	/**
+	 * The minimum number of sequences counted by a single task of the counting pool.
+	 */
+	public static int MIN_SEQUENCES_PER_TASK = 16384;
+
+	/**
+	 * The number of tasks per thread of the counting pool. More tasks balance
+	 * the load better, but each task has its own counters.
+	 */
+	public static int TASKS_PER_THREAD = 4;
+
+	/**
+	 * The algorithm that counts the support of candidate patterns.
+	 */
+	public enum Engine {
+		/**
+		 * Builds the n-grams of each sequence as strings and looks them up in
+		 * the candidate patterns.
+		 */
+		N_GRAM,
+		/**
+		 * Slides a rolling hash over the page ids of each sequence, see
+		 * {@link CandidateTable#countSupport(SequenceDatabase)}.
+		 */
+		ROLLING_HASH,
+		/**
+		 * Walks a prefix trie of the candidates from each position of each
+		 * sequence, see {@link CandidateTrie#countSupport(SequenceDatabase)}.
+		 */
+		TRIE
+	}
+
+	/**
+	 * The strategy that generates the candidate patterns of a level from the
+	 * frequent patterns of the previous level.
+	 */
+	public enum CandidateGeneration {
+		/**
+		 * Appends each frequent neighbour of the last item in {@code itemTopology}.
+		 */
+		TOPOLOGY,
+		/**
+		 * Joins two frequent patterns where the tail of the first one is the
+		 * head of the second one, so the suffix of each candidate is frequent.
+		 * The candidates of the second level are generated by
+		 * {@link #TOPOLOGY} since frequent atoms have no head to join on.
+		 */
+		JOIN_PRUNE
+	}
 	
 	/**
 	 * The minimum support for a pattern to become frequent pattern.
@@ -61,6 +112,16 @@ public class SequentialApriori {
 	 * Length -> (# of patterns) for generating histogram.
 	 */
 	private Hashtable<Integer, Long> maximalLengthCount;
+
+	/**
+	 * The sequences of {@code databaseFile}, read once and scanned at each level.
+	 */
+	private SequenceDatabase database;
+	private String databaseFile;
+
+	private Engine engine = Engine.TRIE;
+	private ForkJoinPool countingPool;
+	private CandidateGeneration candidateGeneration = CandidateGeneration.JOIN_PRUNE;
 	
 	/**
 	 * Constructs an instance of {@link SequentialApriori} class.
@@ -78,6 +139,48 @@ public class SequentialApriori {
 		isExtended = true;
 	}
 
+	/**
+	 * @param engine the algorithm that counts the support of candidate patterns
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Sets the pool that counts the support of each level in parallel. The
+	 * sequences are split into ranges, each range is counted into its own
+	 * counters and the counters are summed at the end of the level, so the
+	 * patterns are the same as the ones of the sequential count. The support
+	 * is counted sequentially if the pool is null or the engine is
+	 * {@link Engine#N_GRAM}. The atoms are always counted sequentially into a
+	 * single array indexed by page id, since each task would need such an
+	 * array of the dictionary size.
+	 * 
+	 * @param countingPool the fork join pool to count the support
+	 */
+	public void setCountingPool(ForkJoinPool countingPool) {
+		this.countingPool = countingPool;
+	}
+
+	public ForkJoinPool getCountingPool() {
+		return countingPool;
+	}
+
+	/**
+	 * @param candidateGeneration the strategy that generates the candidate patterns
+	 */
+	public void setCandidateGeneration(CandidateGeneration candidateGeneration) {
+		this.candidateGeneration = candidateGeneration;
+	}
+
+	public CandidateGeneration getCandidateGeneration() {
+		return candidateGeneration;
+	}
+
 	private void calculateMaximalHistogram() {
 		double avgTot = 0.0f;
 		long totalElement = 0;
@@ -156,70 +259,70 @@ public class SequentialApriori {
 	 * @throws IOException if an error occurs while opening and reading file
 	 */
 	private void createTopology(String fileName) throws IOException {
+		SequenceDatabase sequences = getDatabase(fileName);
+		PageDictionary dictionary = PageDictionary.getShared();
+		int[] pages = sequences.getPages();
 		
-		FileInputStream fstream = null;
-		DataInputStream in = null;
-		BufferedReader br = null;
-		String strLine = null;
-		
-		fstream = new FileInputStream(fileName);
-		in = new DataInputStream(fstream);
-		br = new BufferedReader(new InputStreamReader(in));
-		
-		while ((strLine = br.readLine()) != null) {
+		for (int sequence = 0; sequence < sequences.size(); sequence++) {
 			numberOfSequences++;
-			String[] items = strLine.split("-");
-			if(items.length==1) {
-				continue;
-			}
-			String previousNode = items[0].trim();
-			for (int i = 1; i < items.length; i++) {
-				String latterNode = items[i].trim();
-				if(!previousNode.equals(latterNode)) {
-					if(itemTopology.containsKey(previousNode)){
-						HashSet<String> neighbours = itemTopology.get(previousNode);
-						neighbours.add(latterNode);
-						itemTopology.put(previousNode, neighbours);
-					} else {	
-						HashSet<String> neighbours = new HashSet<String>();
-						neighbours.add(latterNode);
+			int start = sequences.getStart(sequence);
+			int end = sequences.getEnd(sequence);
+			for (int i = start + 1; i < end; i++) {
+				if(pages[i - 1] != pages[i]) {
+					String previousNode = dictionary.getPage(pages[i - 1]);
+					HashSet<String> neighbours = itemTopology.get(previousNode);
+					if(neighbours == null) {
+						neighbours = new HashSet<String>();
 						itemTopology.put(previousNode, neighbours);
 					}
+					neighbours.add(dictionary.getPage(pages[i]));
 				}
-				previousNode=items[i];
 			}
 		}
-		fstream.close();
-		br.close();
-		in.close();
+	}
+
+	/**
+	 * Loads the sequences of {@code fileName} unless they are already loaded.
+	 *
+	 * @param fileName the file name that contains the sequences
+	 * @return the sequences of the file
+	 * @throws IOException if an error occurs while opening and reading file
+	 */
+	private SequenceDatabase getDatabase(String fileName) throws IOException {
+		if (database == null || !fileName.equals(databaseFile)) {
+			database = SequenceDatabase.load(fileName);
+			databaseFile = fileName;
+		}
+		return database;
 	}
 	
 	public void calculateFrequentAtoms(String fileName, Hashtable<String, Pattern> patternTable)
 			throws IOException {
-		Hashtable<String, Long> supportCount = new Hashtable<String, Long>();
-		FileInputStream fstream  = new FileInputStream(fileName);
-		DataInputStream in = new DataInputStream(fstream);
-		BufferedReader br = new BufferedReader(new InputStreamReader(in));
-		String sequence = null;
+		SequenceDatabase sequences = getDatabase(fileName);
+		PageDictionary dictionary = PageDictionary.getShared();
+		int[] pages = sequences.getPages();
+		long[] counts = new long[dictionary.size()];
+		int[] lastSequence = new int[dictionary.size()];
+		Arrays.fill(lastSequence, -1);
 
-		while ((sequence = br.readLine()) != null) {
-			HashSet<String> itemSet = new HashSet<String>();
-			String[] items = sequence.split("-");
-			for (int i = 0; i < items.length; i++) {
-				itemSet.add(items[i].trim());
-			}
-			
-			for (String item : itemSet) {
-				if(supportCount.containsKey(item)){
-					long val = supportCount.get(item);
-					val++;
-					supportCount.put(item, val);
-				} else {
-					supportCount.put(item, 1L);
+		// Count each page once per sequence.
+		for (int sequence = 0; sequence < sequences.size(); sequence++) {
+			for (int i = sequences.getStart(sequence); i < sequences.getEnd(sequence); i++) {
+				int page = pages[i];
+				if (lastSequence[page] != sequence) {
+					lastSequence[page] = sequence;
+					counts[page]++;
 				}
 			}
 		}
 		
+		Hashtable<String, Long> supportCount = new Hashtable<String, Long>();
+		for (int page = 0; page < counts.length; page++) {
+			if (counts[page] > 0) {
+				supportCount.put(dictionary.getPage(page), counts[page]);
+			}
+		}
+		
 		for (String key : supportCount.keySet()) {
 			long count   		= supportCount.get(key);
 			float support  		= (1.0f * count) / (1.0f * numberOfSequences);
@@ -232,10 +335,6 @@ public class SequentialApriori {
 				allPatterns.add(atomicPattern);
 			}
 		}
-
-		fstream.close();
-		br.close();
-		in.close();
 	}
 	
 	/**
@@ -244,7 +343,7 @@ public class SequentialApriori {
 	 * @param candidatePatterns
 	 * @param patternsInPreviousRound
 	 */
-	private void generateCandidatePatterns(Hashtable<String, Long> candidatePatterns,
+	private void generateCandidatePatterns(CandidateIndex candidatePatterns,
 			Hashtable<String, Pattern> patternsInPreviousRound) {
 		for (String key : patternsInPreviousRound.keySet()) {
 			Pattern pattern = patternsInPreviousRound.get(key);
@@ -254,48 +353,112 @@ public class SequentialApriori {
 				for (String neighbour : neighbours) {
 					if (frequentAtoms.contains(neighbour)
 							&& !pattern.getSequence().contains(neighbour)) {
-						Pattern newPattern = pattern.copy();
-						newPattern.setMaximal(true);
-						newPattern.getSequence().add(neighbour);
-						candidatePatterns.put(newPattern.getKey(), 0L);
+						PageIdList candidate = pattern.getSequence().copy();
+						candidate.add(neighbour);
+						candidatePatterns.add(candidate);
 					}
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Generates the candidate patterns by joining the patterns in previous round. A pattern
+	 * P = [P{1}, ..., P{k-1}] is joined with each pattern Q = [P{2}, ..., P{k-1}, Q{k-1}] to
+	 * the candidate [P{1}, ..., P{k-1}, Q{k-1}] unless Q{k-1} is already in P. The only
+	 * contiguous subpatterns of the candidate with length k-1 are P and Q, which are both
+	 * frequent, so the candidates need no further pruning. Stores the result to
+	 * {@code candidatePatterns}.
+	 * 
+	 * @param candidatePatterns the candidate patterns of current round
+	 * @param patternsInPreviousRound the frequent patterns with length k-1, where k is at least 3
+	 */
+	private void joinCandidatePatterns(CandidateIndex candidatePatterns,
+			Hashtable<String, Pattern> patternsInPreviousRound) {
+		// Group the patterns by their head, which is the pattern without its last item.
+		HashMap<PageIdList, List<Pattern>> patternsByHead = new HashMap<>();
+		for (Pattern pattern : patternsInPreviousRound.values()) {
+			PageIdList head = pattern.getSequence().copy();
+			head.remove(head.size() - 1);
+			List<Pattern> patterns = patternsByHead.get(head);
+			if (patterns == null) {
+				patterns = new ArrayList<>();
+				patternsByHead.put(head, patterns);
+			}
+			patterns.add(pattern);
+		}
+
+		for (Pattern pattern : patternsInPreviousRound.values()) {
+			PageIdList tail = pattern.getSequence().copy();
+			tail.remove(0);
+			List<Pattern> suffixes = patternsByHead.get(tail);
+			if (suffixes == null) {
+				continue;
+			}
+			for (Pattern suffix : suffixes) {
+				int lastItem = suffix.getSequence().getLastId();
+				if (!pattern.getSequence().containsId(lastItem)) {
+					PageIdList candidate = pattern.getSequence().copy();
+					candidate.addId(lastItem);
+					candidatePatterns.add(candidate);
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Calculates the support of candidate patterns by scanning all sequences in the database.
-	 * This function extract the {@code step}-Grams of each sequence in database to match with
-	 * patterns in the key set of candidate patterns table.
+	 * Depending on the {@link Engine}, either the n-grams of each sequence are built as
+	 * strings and matched with the candidate patterns, or {@code candidatePatterns}
+	 * counts its own support.
 	 * 
-	 * @param candidatePatterns the candidate pattern table to store frequency of candidate
-	 * 	      patterns
+	 * @param candidatePatterns the candidate patterns that store their frequency
 	 * @param inputFile the input file that contains all sequences in the database.
-	 * @param step the length of patterns in current step.
 	 * @throws IOException if any error occurs while opening and reading {@code inputFile}
 	 */
-	private void calculateSupport(Hashtable<String, Long> candidatePatterns, String inputFile, int step)
+	private void calculateSupport(CandidateIndex candidatePatterns, String inputFile)
 			throws IOException {
-		// Calculate the support of candidate patterns.
-		FileInputStream fstream = new FileInputStream(inputFile);
-		DataInputStream in = new DataInputStream(fstream);
-		BufferedReader br = new BufferedReader(new InputStreamReader(in));
-		String sequence = null;
+		SequenceDatabase sequences = getDatabase(inputFile);
+		if (engine != Engine.N_GRAM) {
+			if (countingPool != null) {
+				candidatePatterns.addCounts(countInParallel(candidatePatterns, sequences));
+			} else {
+				candidatePatterns.countSupport(sequences);
+			}
+			return;
+		}
 
-		while ((sequence = br.readLine()) != null) {
-			Set<String> nGramSet = Utils.getNGrams(sequence, step);
+		int step = candidatePatterns.getLength();
+		Hashtable<String, Integer> candidateIndexes = new Hashtable<>();
+		for (int i = 0; i < candidatePatterns.size(); i++) {
+			candidateIndexes.put(String.join("-", candidatePatterns.getCandidate(i)), i);
+		}
+		long[] counts = new long[candidatePatterns.size()];
+		for (int sequence = 0; sequence < sequences.size(); sequence++) {
+			if (sequences.getLength(sequence) < step) {
+				continue;
+			}
+			Set<String> nGramSet = Utils.getNGrams(sequences.getSequence(sequence), step);
 			for (String nGram : nGramSet) {
-				if (candidatePatterns.containsKey(nGram)) {
-					long count = candidatePatterns.get(nGram);
-					count++;
-					candidatePatterns.put(nGram, count);
+				Integer index = candidateIndexes.get(nGram);
+				if (index != null) {
+					counts[index]++;
 				}
 			}
 		}
-		br.close();
-		in.close();
-		fstream.close();
+		candidatePatterns.addCounts(counts);
+	}
+
+	/**
+	 * Counts the support of {@code candidatePatterns} on {@code countingPool}.
+	 * 
+	 * @return the number of sequences that contain each candidate, by candidate index
+	 */
+	private long[] countInParallel(CandidateIndex candidatePatterns, SequenceDatabase sequences) {
+		int tasks = Math.max(1, countingPool.getParallelism() * TASKS_PER_THREAD);
+		int sequencesPerTask = Math.max(MIN_SEQUENCES_PER_TASK, (sequences.size() + tasks - 1) / tasks);
+		return countingPool.invoke(new SupportCountTask(candidatePatterns, sequences, 0, sequences.size(),
+				sequencesPerTask));
 	}
 
 	/**
@@ -316,19 +479,28 @@ public class SequentialApriori {
 			} else {
 				System.out.println("step: " + step);
 				Hashtable<String, Pattern> patternsInCurrentRound = new Hashtable<>();
-				Hashtable<String, Long> candidatePatterns = new Hashtable<>();
+				CandidateIndex candidatePatterns = engine == Engine.TRIE
+						? new CandidateTrie(step) : new CandidateTable(step);
 				
 				// Generate candidate patterns.
-				generateCandidatePatterns(candidatePatterns, patternsInPreviousRound);
+				if (candidateGeneration == CandidateGeneration.JOIN_PRUNE && step > 2) {
+					joinCandidatePatterns(candidatePatterns, patternsInPreviousRound);
+				} else {
+					generateCandidatePatterns(candidatePatterns, patternsInPreviousRound);
+				}
+				System.out.println("candidates: " + candidatePatterns.size());
 
 				// Calculate the support of candidate patterns.
-				calculateSupport(candidatePatterns, dbFile, step);
+				calculateSupport(candidatePatterns, dbFile);
 				
-				for (String candidate : candidatePatterns.keySet()) {
-					long count	= candidatePatterns.get(candidate);
+				for (int i = 0; i < candidatePatterns.size(); i++) {
+					long count	= candidatePatterns.getCount(i);
 					float support  = (1.0f * count) / (1.0f * numberOfSequences);
 					if(support >= threshold) {
-						Pattern newPattern = new Pattern(candidate, support, true);
+						Pattern newPattern = new Pattern();
+						newPattern.setSequence(candidatePatterns.getCandidate(i));
+						newPattern.setSupport(support);
+						String candidate = newPattern.getKey();
 						patternsInCurrentRound.put(candidate, newPattern);
 						maximalPatterns.put(candidate, newPattern);
 						maximalPatterns.remove(newPattern.getLastItem()); // Remove appended cell.
@@ -347,8 +519,12 @@ public class SequentialApriori {
 	
 	public static void main(String[] args){
 		
-		if(args.length != 5){
-			System.out.println("Usage: Apriori <inputFile> <threshold> <maximalPatternFile> <wholePatternFile>");
+		if(args.length < 5 || args.length > 7){
+			System.out.print("Usage: Apriori <inputFile> <threshold> <maximalPatternFile> <wholePatternFile> ");
+			System.out.println("[<engine> [<threads>]]");
+			System.out.println("Where <inputFile> is either a text or a binary sequence file,");
+			System.out.println("<engine> is one of 'trie' (default), 'rolling_hash' or 'n_gram'");
+			System.out.println("and <threads> is the number of threads that count the support (default 1)");
 			return;
 		}
 		
@@ -359,6 +535,12 @@ public class SequentialApriori {
 		float thresholdAsFloat 		= Float.parseFloat(threshold);
 
 		SequentialApriori apriori = new SequentialApriori(thresholdAsFloat);
+		if (args.length >= 6) {
+			apriori.setEngine(Engine.valueOf(args[5].toUpperCase()));
+		}
+		if (args.length == 7 && Integer.parseInt(args[6]) > 1) {
+			apriori.setCountingPool(new ForkJoinPool(Integer.parseInt(args[6])));
+		}
 		
 		try {
 			apriori.createTopology(inputFile);
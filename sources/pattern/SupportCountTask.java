@@ -0,0 +1,62 @@
+package pattern;
+
+import java.util.concurrent.RecursiveTask;
+
+import core.SequenceDatabase;
+
+/**
+ * Counts the support of candidate patterns over a range of the sequences of
+ * a {@link SequenceDatabase}. The range is split in halves until it has at
+ * most the given number of sequences, each part is counted into its own
+ * counters and the counters of the halves are summed, so the result is the
+ * same as the one of a single sequential scan.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SupportCountTask extends RecursiveTask<long[]> {
+
+	private static final long serialVersionUID = 1L;
+
+	private CandidateIndex candidates;
+	private SequenceDatabase database;
+	private int from;
+	private int to;
+	private int sequencesPerTask;
+
+	/**
+	 * @param candidates the candidate patterns, they are only read
+	 * @param database the sequences
+	 * @param from the index of the first sequence
+	 * @param to the index after the last sequence
+	 * @param sequencesPerTask the maximum number of sequences counted without splitting
+	 */
+	public SupportCountTask(CandidateIndex candidates, SequenceDatabase database, int from, int to,
+			int sequencesPerTask) {
+		this.candidates = candidates;
+		this.database = database;
+		this.from = from;
+		this.to = to;
+		this.sequencesPerTask = Math.max(1, sequencesPerTask);
+	}
+
+	/**
+	 * @return the number of sequences in the range that contain each candidate, by candidate index
+	 */
+	@Override
+	protected long[] compute() {
+		if (to - from <= sequencesPerTask) {
+			long[] counts = new long[candidates.size()];
+			candidates.countSupport(database, from, to, counts, new int[candidates.size()]);
+			return counts;
+		}
+		int middle = (from + to) >>> 1;
+		SupportCountTask left = new SupportCountTask(candidates, database, from, middle, sequencesPerTask);
+		left.fork();
+		long[] counts = new SupportCountTask(candidates, database, middle, to, sequencesPerTask).compute();
+		long[] leftCounts = left.join();
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += leftCounts[i];
+		}
+		return counts;
+	}
+}
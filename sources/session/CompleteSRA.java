@@ -1,13 +1,16 @@
 package session;
 
 import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import core.PageIdList;
+import core.PrefixSequence;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 
 
@@ -29,7 +32,56 @@ public class CompleteSRA extends LinkBasedConstructor {
 		modeMap.put("referrer", Mode.REFERRERMODE);
 	}
 
+	/**
+	 * The algorithm that enumerates the sequences of a session.
+	 */
+	public enum Engine {
+		/**
+		 * Extends every candidate sequence page by page.
+		 */
+		ENUMERATION,
+		/**
+		 * Keeps the referrers of each position as a bitmask and only builds
+		 * the maximal sequences, used for sessions of at most
+		 * {@link CompleteSRA#BITSET_MAX_PAGES} pages.
+		 */
+		BITSET,
+		/**
+		 * Keeps at most {@link CompleteSRA#BEAM_WIDTH} sequences ending at each
+		 * position and bounds the work per session, the sequences are a subset
+		 * of the ones of the enumeration if no sequence is dropped. The result
+		 * depends on the time budget, so it is never taken from the shape cache.
+		 */
+		BEAM;
+	}
+
+	/**
+	 * The longest session that is processed by {@link Engine#BITSET}.
+	 */
+	public static final int BITSET_MAX_PAGES = 64;
+
+	/**
+	 * The number of sequences kept per position by {@link Engine#BEAM}.
+	 */
+	public static int BEAM_WIDTH = 16;
+
+	/**
+	 * The number of link checks and extensions per session after which
+	 * {@link Engine#BEAM} only extends the sequences ending at the previous page.
+	 */
+	public static long BEAM_WORK_BUDGET = 1000000;
+
+	/**
+	 * The time per session in milliseconds after which {@link Engine#BEAM}
+	 * only extends the sequences ending at the previous page.
+	 */
+	public static long BEAM_TIME_BUDGET = 100;
+
 	private int maxExtensionCount;
+	private Engine engine;
+	private long beamTruncatedSessions;
+	private long beamDroppedSequences;
+	private long beamBudgetExceededSessions;
 
 	/**
 	 * Constructor for Complete SRA.
@@ -47,9 +99,25 @@ public class CompleteSRA extends LinkBasedConstructor {
 		this.maxExtensionCount = maxExtensionCount;
 		this.sequenceCountMap = new HashMap<Integer, Integer>();
 		this.lengthMap = new HashMap<Integer, Integer>();
+		this.engine = Engine.BITSET;
+	}
+
+	/**
+	 * Sets the algorithm that enumerates the sequences. The enumeration is
+	 * always used for longer sessions and if the extension count is limited.
+	 * 
+	 * @param engine the algorithm to enumerate the sequences
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+		clearShapeCache();
 	}
 
-	private boolean canExtend(Sequence inputSequence) {
+	public Engine getEngine() {
+		return engine;
+	}
+
+	private boolean canExtend(PrefixSequence inputSequence) {
 		if (runningMode == Mode.REFERRERMODE) {
 			return true;
 		} else {
@@ -58,27 +126,26 @@ public class CompleteSRA extends LinkBasedConstructor {
 		}
 	}
 
-	private Sequence extendSequence(Sequence inputSequence, String webPage, Session candidateSession) {
-		String lastElement = inputSequence.getLastElement();
-		if (isReferrer(lastElement, webPage, candidateSession)) {
+	/**
+	 * Extends the sequence with {@code webPage}, the new sequence shares the
+	 * pages of {@code inputSequence} so the extension does not copy any page.
+	 */
+	private PrefixSequence extendSequence(PrefixSequence inputSequence, int webPage, int position,
+			SessionLinkIndex links) {
+		int lastElement = inputSequence.getLastPageId();
+		if (links.isReferrerPage(lastElement, position)) {
 			if (canExtend(inputSequence)) {
 				inputSequence.setMaximal(false);
 				inputSequence.setNumberOfExtension(inputSequence.getNumberOfExtension() + 1);
-				Sequence newSequence = inputSequence.copy();
-				newSequence.setPenalty(1.0f);
-				newSequence.setMaximal(true);
-				newSequence.addPage(webPage);
-				newSequence.setOutDegree(topology.getNeighBours(webPage).size());
-				newSequence.setNumberOfExtension(0);
-				return newSequence;
+				return inputSequence.extend(webPage, topology.getOutDegree(webPage));
 			}
 		}
 		return null;
 	}
 
-	private Sequence createSequence(String webPage) {
-		int outdegree = topology.getNeighBours(webPage).size();
-		return new Sequence(webPage, outdegree);
+	private PrefixSequence createSequence(int webPage) {
+		int outdegree = topology.getOutDegree(webPage);
+		return new PrefixSequence(webPage, outdegree);
 	}
 
 	@Override
@@ -91,27 +158,52 @@ public class CompleteSRA extends LinkBasedConstructor {
 	 * Function to process single session coming from time oriented heuristics.
 	 */
 	@Override
-	public void processSession(
+	protected void constructSequences(
 			Session candidateSession,
 			List<Sequence> outputSequencesForPrediction,
 			boolean skipSimpleSessions,
 			float penalty) {
 
-		if (isSimpleSession(candidateSession) && skipSimpleSessions) {
+		SessionLinkIndex links = createLinkIndex(candidateSession);
+		if (links.isSimpleSession() && skipSimpleSessions) {
 			return;
 		}
-		ArrayList<Sequence> outputSequences = new ArrayList<Sequence>();
-		List<String> webPages = candidateSession.getSequence();
+		PageIdList webPages = candidateSession.getSequence();
+		int maximalCount;
+		if (engine == Engine.BEAM) {
+			maximalCount = processWithBeam(candidateSession, links, outputSequencesForPrediction, penalty);
+		} else if (engine == Engine.BITSET && webPages.size() <= BITSET_MAX_PAGES && maxExtensionCount == Integer.MAX_VALUE) {
+			maximalCount = processWithBitsets(candidateSession, links, outputSequencesForPrediction, penalty);
+		} else {
+			maximalCount = processWithEnumeration(candidateSession, links, outputSequencesForPrediction, penalty);
+		}
+		if (sequenceCountMap.containsKey(maximalCount)) {
+			sequenceCountMap.put(maximalCount, (sequenceCountMap.get(maximalCount) + 1));
+		} else {
+			sequenceCountMap.put(maximalCount, 1);
+		}
+	}
+
+	/**
+	 * Enumerates the sequences by extending every candidate with each page of the session.
+	 * 
+	 * @return the number of maximal sequences
+	 */
+	private int processWithEnumeration(Session candidateSession, SessionLinkIndex links,
+			List<Sequence> outputSequencesForPrediction, float penalty) {
+		ArrayList<PrefixSequence> outputSequences = new ArrayList<PrefixSequence>();
+		PageIdList webPages = candidateSession.getSequence();
 
 		for (int i = 0; i < webPages.size(); i++) {
-			String currentPage = webPages.get(i);
+			int currentPage = webPages.getId(i);
 			boolean isAnyExtended = false;
-			List<Sequence> tempSequences = new ArrayList<>();
+			List<PrefixSequence> tempSequences = new ArrayList<>();
 			for (int j = 0; j < outputSequences.size(); j++) {
-				Sequence newSequence = extendSequence(
+				PrefixSequence newSequence = extendSequence(
 						outputSequences.get(j),
 						currentPage,
-						candidateSession);
+						i,
+						links);
 				isAnyExtended = (!isAnyExtended) ? (newSequence != null) : true;
 				if (newSequence != null) {
 					tempSequences.add(newSequence);
@@ -126,22 +218,221 @@ public class CompleteSRA extends LinkBasedConstructor {
 		int maximalCount = 0;
 		for (int i = 0; i < outputSequences.size(); i++) {
 			if (outputSequences.get(i).getLength() >= 1 && outputSequences.get(i).isMaximal()) {
-				outputStream.println(outputSequences.get(i));
-				outputSequences.get(i).setPenalty(penalty);
-				outputSequencesForPrediction.add(outputSequences.get(i));
+				// Only the maximal sequences are materialized.
+				emitMaximalSequence(outputSequences.get(i).toSequence(), outputSequencesForPrediction, penalty);
 				maximalCount++;
-				int len = outputSequences.get(i).getLength();
-				if (lengthMap.containsKey(len)) {
-					lengthMap.put(len, (lengthMap.get(len) + 1));
-				} else {
-					lengthMap.put(len, 1);
+			}
+		}
+		return maximalCount;
+	}
+
+	/**
+	 * Finds the same maximal sequences as {@link #processWithEnumeration} in
+	 * the same order without building the intermediate sequences.
+	 * 
+	 * The enumeration extends every sequence that ends at an earlier position
+	 * j with the page at position i if the page at j is referrer of the page
+	 * at i, and it starts a new sequence at i only if no sequence is extended.
+	 * So its maximal sequences are the paths from the positions without
+	 * referrers to the positions that are not referrer of any later position.
+	 * The sequences are ordered by their last position, then by the position
+	 * before it and so on, which is the order the paths are visited below.
+	 * 
+	 * @return the number of maximal sequences
+	 */
+	private int processWithBitsets(Session candidateSession, SessionLinkIndex links,
+			List<Sequence> outputSequencesForPrediction, float penalty) {
+		PageIdList webPages = candidateSession.getSequence();
+		int size = webPages.size();
+		// Bit j of referrers[i] is set if the page at j is referrer of the page at i.
+		long[] referrers = new long[size];
+		long hasSuccessor = 0L;
+		for (int i = 0; i < size; i++) {
+			long mask = 0L;
+			for (int j = 0; j < i; j++) {
+				if (links.isReferrer(j, i)) {
+					mask |= 1L << j;
 				}
 			}
+			referrers[i] = mask;
+			hasSuccessor |= mask;
 		}
-		if (sequenceCountMap.containsKey(maximalCount)) {
-			sequenceCountMap.put(maximalCount, (sequenceCountMap.get(maximalCount) + 1));
+
+		int maximalCount = 0;
+		int[] path = new int[size];
+		long sinks = size == 64 ? ~hasSuccessor : ~hasSuccessor & ((1L << size) - 1);
+		for (long bits = sinks; bits != 0L; bits &= bits - 1) {
+			int sink = Long.numberOfTrailingZeros(bits);
+			maximalCount += emitPaths(sink, 0, path, referrers, webPages, outputSequencesForPrediction, penalty);
+		}
+		return maximalCount;
+	}
+
+	/**
+	 * Extends the sequences like {@link #processWithEnumeration}, but only the
+	 * {@link #BEAM_WIDTH} best extensions with each page are kept. The
+	 * extensions are ranked by their length, then by the out-degree of the
+	 * referrer, since a link of a page with fewer links carries more weight,
+	 * then by the order of the enumeration. The dropped extensions still make
+	 * their sequences non-maximal, but only the kept ones count towards the
+	 * extension limit of their sequences. When the work or the time budget is used up
+	 * only the sequences ending at the previous page are extended, so the cost
+	 * of the rest of the session is linear in its length.
+	 * 
+	 * @return the number of maximal sequences
+	 */
+	private int processWithBeam(Session candidateSession, SessionLinkIndex links,
+			List<Sequence> outputSequencesForPrediction, float penalty) {
+		PageIdList webPages = candidateSession.getSequence();
+		int size = webPages.size();
+		long deadline = System.nanoTime() + BEAM_TIME_BUDGET * 1000000L;
+		long work = 0;
+		boolean isTruncated = false;
+		boolean isOverBudget = false;
+		List<List<PrefixSequence>> sequencesByEnd = new ArrayList<>(size);
+		List<PrefixSequence> candidates = new ArrayList<>();
+
+		for (int i = 0; i < size; i++) {
+			int currentPage = webPages.getId(i);
+			if (!isOverBudget && (work > BEAM_WORK_BUDGET || System.nanoTime() > deadline)) {
+				isOverBudget = true;
+			}
+			candidates.clear();
+			for (int j = isOverBudget ? Math.max(i - 1, 0) : 0; j < i; j++) {
+				work++;
+				if (links.isReferrer(j, i)) {
+					for (PrefixSequence sequence : sequencesByEnd.get(j)) {
+						work++;
+						if (canExtend(sequence)) {
+							sequence.setMaximal(false);
+							candidates.add(sequence);
+						}
+					}
+				}
+			}
+
+			List<PrefixSequence> endingSequences = new ArrayList<>();
+			if (candidates.isEmpty()) {
+				endingSequences.add(createSequence(currentPage));
+			} else {
+				if (candidates.size() > BEAM_WIDTH) {
+					candidates.sort((first, second) -> first.getLength() != second.getLength()
+							? Integer.compare(second.getLength(), first.getLength())
+							: Integer.compare(first.getOutDegree(), second.getOutDegree()));
+					beamDroppedSequences += candidates.size() - BEAM_WIDTH;
+					isTruncated = true;
+				}
+				int outDegree = topology.getOutDegree(currentPage);
+				for (int k = 0; k < Math.min(candidates.size(), BEAM_WIDTH); k++) {
+					PrefixSequence sequence = candidates.get(k);
+					sequence.setNumberOfExtension(sequence.getNumberOfExtension() + 1);
+					endingSequences.add(sequence.extend(currentPage, outDegree));
+				}
+			}
+			sequencesByEnd.add(endingSequences);
+		}
+		beamTruncatedSessions += isTruncated ? 1 : 0;
+		beamBudgetExceededSessions += isOverBudget ? 1 : 0;
+
+		int maximalCount = 0;
+		for (List<PrefixSequence> endingSequences : sequencesByEnd) {
+			for (PrefixSequence sequence : endingSequences) {
+				if (sequence.isMaximal()) {
+					emitMaximalSequence(sequence.toSequence(), outputSequencesForPrediction, penalty);
+					maximalCount++;
+				}
+			}
+		}
+		return maximalCount;
+	}
+
+	/**
+	 * @return the number of sessions where {@link Engine#BEAM} dropped sequences
+	 */
+	public long getBeamTruncatedSessions() {
+		return beamTruncatedSessions;
+	}
+
+	/**
+	 * @return the number of sequences dropped by {@link Engine#BEAM}
+	 */
+	public long getBeamDroppedSequences() {
+		return beamDroppedSequences;
+	}
+
+	/**
+	 * @return the number of sessions where {@link Engine#BEAM} used up its budget
+	 */
+	public long getBeamBudgetExceededSessions() {
+		return beamBudgetExceededSessions;
+	}
+
+	/**
+	 * Emits the paths ending with {@code path[0..depth)} in reverse order whose
+	 * next position from the end is {@code position}.
+	 * 
+	 * @return the number of emitted sequences
+	 */
+	private int emitPaths(int position, int depth, int[] path, long[] referrers, PageIdList webPages,
+			List<Sequence> outputSequencesForPrediction, float penalty) {
+		path[depth] = position;
+		if (referrers[position] == 0L) {
+			Sequence maximalSequence = new Sequence(webPages.getId(path[depth]), 0);
+			for (int i = depth - 1; i >= 0; i--) {
+				maximalSequence.addPage(webPages.getId(path[i]));
+			}
+			maximalSequence.setOutDegree(topology.getOutDegree(webPages.getId(path[0])));
+			emitMaximalSequence(maximalSequence, outputSequencesForPrediction, penalty);
+			return 1;
+		}
+		int count = 0;
+		for (long bits = referrers[position]; bits != 0L; bits &= bits - 1) {
+			count += emitPaths(Long.numberOfTrailingZeros(bits), depth + 1, path, referrers, webPages,
+					outputSequencesForPrediction, penalty);
+		}
+		return count;
+	}
+
+	/**
+	 * Sessions processed by {@link Engine#BEAM} are not cached, since a
+	 * session cut short by the time budget would be replayed for every session
+	 * of the same shape, and the truncation counts would miss the hits.
+	 */
+	@Override
+	protected boolean isShapeCacheable() {
+		return engine != Engine.BEAM;
+	}
+
+	/**
+	 * Updates the statistics the same way as the construction, a session
+	 * always has at least one maximal sequence unless it is skipped.
+	 */
+	@Override
+	protected void emitCachedSequences(List<Sequence> cachedSequences, List<Sequence> outputSequencesForPrediction,
+			boolean skipSimpleSessions, float penalty) {
+		for (Sequence sequence : cachedSequences) {
+			emitMaximalSequence(sequence, outputSequencesForPrediction, penalty);
+		}
+		if (!cachedSequences.isEmpty() || !skipSimpleSessions) {
+			int maximalCount = cachedSequences.size();
+			if (sequenceCountMap.containsKey(maximalCount)) {
+				sequenceCountMap.put(maximalCount, (sequenceCountMap.get(maximalCount) + 1));
+			} else {
+				sequenceCountMap.put(maximalCount, 1);
+			}
+		}
+	}
+
+	private void emitMaximalSequence(Sequence maximalSequence, List<Sequence> outputSequencesForPrediction,
+			float penalty) {
+		sequenceSink.write(maximalSequence.getSequence());
+		maximalSequence.setPenalty(penalty);
+		outputSequencesForPrediction.add(maximalSequence);
+		int len = maximalSequence.getLength();
+		if (lengthMap.containsKey(len)) {
+			lengthMap.put(len, (lengthMap.get(len) + 1));
 		} else {
-			sequenceCountMap.put(maximalCount, 1);
+			lengthMap.put(len, 1);
 		}
 	}
 
@@ -154,12 +445,19 @@ public class CompleteSRA extends LinkBasedConstructor {
 		for (Integer key : sequenceCountMap.keySet()) {
 			System.out.println("Len " + key + " Count " + sequenceCountMap.get(key));
 		}
+		if (engine == Engine.BEAM) {
+			System.out.println("Beam truncated sessions " + beamTruncatedSessions
+					+ " Dropped sequences " + beamDroppedSequences
+					+ " Over budget sessions " + beamBudgetExceededSessions);
+		}
 	}
 
 	public static void main(String[] args) {
-		if (args.length != 6) {
-			System.out.println("Usage: CompleteSRA <inputDir> <topologyFile> <outputFile> <runMode> <domainName>");
+		if (args.length != 6 && args.length != 7) {
+			System.out.print("Usage: CompleteSRA <inputDir> <topologyFile> <outputFile> <runMode> <domainName> ");
+			System.out.println("[<engine>]");
 			System.out.println("Where <runMode> is either 'topology' or 'referer'");
+			System.out.println("and <engine> is one of 'bitset' (default), 'enumeration' or 'beam'");
 			return;
 		}
 
@@ -173,9 +471,12 @@ public class CompleteSRA extends LinkBasedConstructor {
 				modeMap.get(runningMode),
 				Integer.MAX_VALUE,
 				false);
+		if (args.length == 7) {
+			completeSRA.setEngine(Engine.valueOf(args[6].toUpperCase()));
+		}
 		
 		try {
-			outputStream = new PrintStream(outputFile);
+			completeSRA.setSequenceSink(SequenceSink.open(outputFile));
 			System.out.println("Topology File: " + topologyFile);
 			completeSRA.loadTopology(topologyFile);
 		} catch (FileNotFoundException exception) {
@@ -183,6 +484,10 @@ public class CompleteSRA extends LinkBasedConstructor {
 		}
 		completeSRA.ProcessFiles(inputFolder);
 		completeSRA.PrintStats();
-		outputStream.close();
+		try {
+			completeSRA.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
 	}
 }
\ No newline at end of file
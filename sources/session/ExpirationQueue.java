@@ -0,0 +1,107 @@
+package session;
+
+import java.util.Arrays;
+
+import core.Session;
+
+/**
+ * Min heap of the active sessions ordered by their expiration time. The
+ * entries are kept in parallel arrays, so scheduling a session does not
+ * create any objects. The queue is not updated when a session is replaced
+ * in the {@link SessionTable}, the owner is expected to skip such stale
+ * entries when they are polled.
+ *
+ * @author Murat Ali Bayir
+ */
+public class ExpirationQueue {
+
+	private long[] deadlines;
+	private Session[] sessions;
+	private int size;
+
+	public ExpirationQueue() {
+		this(1024);
+	}
+
+	public ExpirationQueue(int initialCapacity) {
+		deadlines = new long[Math.max(16, initialCapacity)];
+		sessions = new Session[deadlines.length];
+	}
+
+	/**
+	 * Schedules {@code session} to expire after {@code deadline}.
+	 */
+	public void add(long deadline, Session session) {
+		if (size == deadlines.length) {
+			deadlines = Arrays.copyOf(deadlines, size * 2);
+			sessions = Arrays.copyOf(sessions, size * 2);
+		}
+		int index = size++;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (deadlines[parent] <= deadline) {
+				break;
+			}
+			deadlines[index] = deadlines[parent];
+			sessions[index] = sessions[parent];
+			index = parent;
+		}
+		deadlines[index] = deadline;
+		sessions[index] = session;
+	}
+
+	/**
+	 * @return the earliest deadline in the queue, {@link Long#MAX_VALUE} if the queue is empty.
+	 */
+	public long peekDeadline() {
+		return size > 0 ? deadlines[0] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Removes the session with the earliest deadline.
+	 *
+	 * @return the removed session or null if the queue is empty
+	 */
+	public Session poll() {
+		if (size == 0) {
+			return null;
+		}
+		Session result = sessions[0];
+		size--;
+		long deadline = deadlines[size];
+		Session session = sessions[size];
+		sessions[size] = null;
+		int index = 0;
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && deadlines[child + 1] < deadlines[child]) {
+				child++;
+			}
+			if (deadline <= deadlines[child]) {
+				break;
+			}
+			deadlines[index] = deadlines[child];
+			sessions[index] = sessions[child];
+			index = child;
+		}
+		if (size > 0) {
+			deadlines[index] = deadline;
+			sessions[index] = session;
+		}
+		return result;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(sessions, 0, size, null);
+		size = 0;
+	}
+}
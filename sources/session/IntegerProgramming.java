@@ -1,13 +1,15 @@
 package session;
 
 import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import core.PageIdList;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 
 /**
@@ -26,11 +28,43 @@ public class IntegerProgramming extends LinkBasedConstructor {
 		modeMap.put("referrer", Mode.REFERRERMODE);
 	}
 	
+	/**
+	 * The algorithm that finds the longest sequence of a session.
+	 */
+	public enum Engine {
+		/**
+		 * Enumerates all sequences like {@link CompleteSRA} and keeps the longest one.
+		 */
+		ENUMERATION,
+		/**
+		 * Finds the longest path of the session graph by dynamic programming in O(n^2).
+		 */
+		LONGEST_PATH;
+	}
+
 	private int maxExtensionCount;
+	private Engine engine;
 	
 	public IntegerProgramming(String domainName, Mode runningMode, int maxExtensionCount, boolean skipSimpleSessions) {
 		super(domainName, runningMode, skipSimpleSessions);
 		this.maxExtensionCount = maxExtensionCount;
+		this.engine = Engine.LONGEST_PATH;
+	}
+
+	/**
+	 * Sets the algorithm that finds the longest sequence. The enumeration is
+	 * always used if the extension count is limited, since the limit depends
+	 * on the order the sequences are enumerated.
+	 * 
+	 * @param engine the algorithm to find the longest sequence
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+		clearShapeCache();
+	}
+
+	public Engine getEngine() {
+		return engine;
 	}
 
 	private boolean canExtend(Sequence inputSequence) {
@@ -42,9 +76,9 @@ public class IntegerProgramming extends LinkBasedConstructor {
 		}
 	}
 
-	private Sequence extendSequence(Sequence inputSequence, String webPage, Session candidateSession) {
-		String lastElement = inputSequence.getLastElement();
-		if (isReferrer(lastElement, webPage, candidateSession)) {
+	private Sequence extendSequence(Sequence inputSequence, int webPage, int position, SessionLinkIndex links) {
+		int lastElement = inputSequence.getLastPageId();
+		if (links.isReferrerPage(lastElement, position)) {
 			if (canExtend(inputSequence)) {
 				inputSequence.setMaximal(false);
 				inputSequence.setNumberOfExtension(inputSequence.getNumberOfExtension() + 1);
@@ -52,7 +86,7 @@ public class IntegerProgramming extends LinkBasedConstructor {
 				newSequence.setPenalty(1.0f);
 				newSequence.setMaximal(true);
 				newSequence.addPage(webPage);
-				newSequence.setOutDegree(topology.getNeighBours(webPage).size());
+				newSequence.setOutDegree(topology.getOutDegree(webPage));
 				newSequence.setNumberOfExtension(0);
 				return newSequence;
 			}
@@ -60,8 +94,8 @@ public class IntegerProgramming extends LinkBasedConstructor {
 		return null;
 	}
 
-	private Sequence createSequence(String webPage) {
-		int outdegree = topology.getNeighBours(webPage).size();
+	private Sequence createSequence(int webPage) {
+		int outdegree = topology.getOutDegree(webPage);
 		return new Sequence(webPage, outdegree);
 	}
 	
@@ -72,28 +106,44 @@ public class IntegerProgramming extends LinkBasedConstructor {
 	}
 
 	@Override
-	public void processSession(
+	protected void constructSequences(
 			Session candidateSession,
 			List<Sequence> outputSequencesForPrediction,
 			boolean skipSimpleSessions,
 			float penalty) {
 
-		if (isSimpleSession(candidateSession) && skipSimpleSessions) {
+		SessionLinkIndex links = createLinkIndex(candidateSession);
+		if (links.isSimpleSession() && skipSimpleSessions) {
 			return ;
 		}
 
+		Sequence longestSequence = (engine == Engine.LONGEST_PATH && maxExtensionCount == Integer.MAX_VALUE)
+				? findLongestPath(candidateSession, links)
+				: enumerateLongestSequence(candidateSession, links);
+		if (longestSequence != null) {
+			sequenceSink.write(longestSequence.getSequence());
+			longestSequence.setPenalty(penalty);
+			outputSequencesForPrediction.add(longestSequence);
+		}
+	}
+
+	/**
+	 * Finds the longest sequence by enumerating all sequences of the session.
+	 */
+	private Sequence enumerateLongestSequence(Session candidateSession, SessionLinkIndex links) {
 		ArrayList<Sequence> outputSequences 	= new ArrayList<Sequence>();
-		List<String> webPages = candidateSession.getSequence();
+		PageIdList webPages = candidateSession.getSequence();
 		
 		for (int i = 0; i < webPages.size(); i++) {
-			String currentPage = webPages.get(i);
+			int currentPage = webPages.getId(i);
 			boolean isAnyExtended = false;
 			List<Sequence> tempSequences = new ArrayList<>();
 			for (int j = 0; j < outputSequences.size(); j++) {
 				Sequence newSequence = extendSequence(
 						outputSequences.get(j),
 						currentPage,
-						candidateSession);
+						i,
+						links);
 				isAnyExtended = (!isAnyExtended) ? (newSequence != null) : true;
 				if (newSequence != null) {
 					tempSequences.add(newSequence);
@@ -115,17 +165,62 @@ public class IntegerProgramming extends LinkBasedConstructor {
 				}
 			}
 		}
-		if (longestSequence != null) {
-			outputStream.println(longestSequence);
-			longestSequence.setPenalty(penalty);
-			outputSequencesForPrediction.add(longestSequence);
+		return longestSequence;
+	}
+
+	/**
+	 * Finds the longest sequence as the longest path of the graph whose nodes
+	 * are the positions of the session and whose edges go from position j to
+	 * a later position i if the page at j is referrer of the page at i.
+	 * 
+	 * The enumeration creates a sequence for every path from a position without
+	 * an incoming edge, and a sequence is maximal if its last position has no
+	 * outgoing edge. The longest path always starts and ends at such positions.
+	 * The ties are broken the way the enumeration orders its sequences: by the
+	 * last position first, then by the previous position, and so on. So the
+	 * back-pointer of a position is the earliest predecessor with the longest
+	 * path, and the path ending at the earliest position wins.
+	 */
+	private Sequence findLongestPath(Session candidateSession, SessionLinkIndex links) {
+		PageIdList webPages = candidateSession.getSequence();
+		int size = webPages.size();
+		if (size == 0) {
+			return null;
+		}
+		int[] length = new int[size];
+		int[] previous = new int[size];
+		int last = -1;
+		for (int i = 0; i < size; i++) {
+			length[i] = 1;
+			previous[i] = -1;
+			for (int j = 0; j < i; j++) {
+				if (length[j] + 1 > length[i] && links.isReferrer(j, i)) {
+					length[i] = length[j] + 1;
+					previous[i] = j;
+				}
+			}
+			if (last < 0 || length[i] > length[last]) {
+				last = i;
+			}
 		}
+		int[] path = new int[length[last]];
+		for (int i = path.length - 1, position = last; i >= 0; i--, position = previous[position]) {
+			path[i] = webPages.getId(position);
+		}
+		Sequence longestSequence = new Sequence(path[0]);
+		for (int i = 1; i < path.length; i++) {
+			longestSequence.addPage(path[i]);
+		}
+		longestSequence.setOutDegree(topology.getOutDegree(path[path.length - 1]));
+		return longestSequence;
 	}
 
 	public static void main(String[] args) {
-		if(args.length != 6) {
-			System.out.println("Usage: IntegerProgramming <inputDir> <topologyFile> <outputFile> <runMode> <domainName>");
+		if(args.length != 6 && args.length != 7) {
+			System.out.print("Usage: IntegerProgramming <inputDir> <topologyFile> <outputFile> <runMode> <domainName> ");
+			System.out.println("[<engine>]");
 			System.out.println("Where <runMode> is either 'topology' or 'referer'");
+			System.out.println("and <engine> is either 'longest-path' (default) or 'enumeration'");
 			return;
 		}
 
@@ -137,15 +232,22 @@ public class IntegerProgramming extends LinkBasedConstructor {
 
 		IntegerProgramming integerProgramming =
 				new IntegerProgramming(domainName, modeMap.get(runningMode), Integer.MAX_VALUE, false);
+		if (args.length == 7 && "enumeration".equals(args[6])) {
+			integerProgramming.setEngine(Engine.ENUMERATION);
+		}
 		
 		try {
-			outputStream = new PrintStream(outputFile);
+			integerProgramming.setSequenceSink(SequenceSink.open(outputFile));
 			System.out.println("Topology File: " + topologyFile);
 			integerProgramming.loadTopology(topologyFile);
 		} catch (FileNotFoundException exception) {
 			exception.printStackTrace();
 		}
 		integerProgramming.ProcessFiles(inputFolder);
-	    outputStream.close();	
+		try {
+			integerProgramming.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
 	}
 }
\ No newline at end of file
@@ -1,13 +1,12 @@
 package session;
 
-import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import core.Sequence;
 import core.Session;
+import parsing.LogParser;
+import topology.Topology;
 
 public abstract class LinkBasedConstructor extends SessionConstructor {
 
@@ -17,7 +16,7 @@ public abstract class LinkBasedConstructor extends SessionConstructor {
 	}
 
 	protected Mode runningMode;
-	protected static PrintStream outputStream;
+	protected SessionShapeCache shapeCache;
 	protected static long DURATION_THRESHOLD   = 30; //15 min
 	protected static long PAGESTAY_THRESHOLD = 10;  //1 min
 
@@ -35,34 +34,139 @@ public abstract class LinkBasedConstructor extends SessionConstructor {
 	 * @return true if the {@code fromPage} is referrer of {@code fromPage} otherwise returns false
 	 */
 	protected boolean isReferrer(String fromPage, String toPage, Session session) {
+		return isReferrer(dictionary.lookup(fromPage), dictionary.lookup(toPage), session);
+	}
+
+	/**
+	 * Checks whether the page with id {@code fromPage} is referrer of the page with id {@code toPage}.
+	 * 
+	 * @param fromPage the id of from url
+	 * @param toPage the id of to url
+	 * @param session the session contains from and to urls
+	 * @return true if the {@code fromPage} is referrer of {@code fromPage} otherwise returns false
+	 */
+	protected boolean isReferrer(int fromPage, int toPage, Session session) {
 		if (runningMode.equals(Mode.REFERRERMODE)) {
-			return session.getReferrer(toPage).equals(fromPage);
+			return session.getReferrerId(toPage) == fromPage;
 		} else {
 			return topology.checkLink(fromPage, toPage);
 		}
 	}
 	
+	/**
+	 * Builds the index that answers {@link #isReferrer(int, int, Session)} and
+	 * {@link #isSimpleSession(Session)} for the positions of {@code session} in
+	 * constant time.
+	 * 
+	 * @param session the session to index
+	 * @return the link index of the session
+	 */
+	protected SessionLinkIndex createLinkIndex(Session session) {
+		return new SessionLinkIndex(session, runningMode, topology, dictionary.lookup(LogParser.EXTERNAL_PLACEHOLDER));
+	}
+
 	@Override
-	public void CreateSessionOrAppendPage(String ipNo, String visitedPage, String refUrl, long visitTime) {
-		if(ipToSessions.containsKey(ipNo)) {
-			Session temp = ipToSessions.get(ipNo);
+	public void CreateSessionOrAppendPage(long ipHigh, long ipLow, int visitedPage, int refUrl, long visitTime) {
+		Session temp = ipToSessions.get(ipHigh, ipLow);
+		if(temp != null) {
 			if((visitTime - temp.getInitalTime()) <= DURATION_THRESHOLD) {
 				temp.appendPage(visitedPage, refUrl, visitTime);
-				ipToSessions.put(ipNo, temp);
 			} else {
-				Session expiredSession = ipToSessions.get(ipNo);
-				processSession(expiredSession, skipSimpleSessions);
+				processSession(temp, skipSimpleSessions);
 				numberOfTOSessions ++;
 				//System.out.println("Constructed Session: " + numberOfTOSessions);
-				ipToSessions.put(ipNo, new Session(ipNo, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions));
+				startSession(new Session(ipHigh, ipLow, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions),
+						DURATION_THRESHOLD);
 			}
 		} else {
 			numberOfTOSessions ++;
 			//System.out.println("Constructed Session: " + numberOfTOSessions);
-			ipToSessions.put(ipNo, new Session(ipNo, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions));
+			startSession(new Session(ipHigh, ipLow, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions),
+					DURATION_THRESHOLD);
+		}
+	}
+
+	/**
+	 * Turns on caching of the sequences by session shape, sessions with the
+	 * same pages and referrers as a cached session emit the cached sequences.
+	 * The cache should not be shared with other constructors, it is cleared
+	 * when the engine or the topology of this constructor is changed. A
+	 * topology modified in place after sessions are processed is not
+	 * detected, the cache should be cleared by the caller then.
+	 * 
+	 * @param shapeCache the cache or null to turn off caching
+	 */
+	public void setShapeCache(SessionShapeCache shapeCache) {
+		this.shapeCache = shapeCache;
+	}
+
+	public SessionShapeCache getShapeCache() {
+		return shapeCache;
+	}
+
+	/**
+	 * @return false if the sequences of the sessions must be constructed even
+	 *         when a shape cache is set, true by default.
+	 */
+	protected boolean isShapeCacheable() {
+		return true;
+	}
+
+	/**
+	 * Drops the cached sequences, called when a setting that changes the
+	 * sequences of a session is changed.
+	 */
+	protected void clearShapeCache() {
+		if (shapeCache != null) {
+			shapeCache.clear();
 		}
 	}
 
+	@Override
+	public void setTopology(Topology topology) {
+		super.setTopology(topology);
+		clearShapeCache();
+	}
+
+	/**
+	 * Constructs the sequences of the session, writes them to the sequence
+	 * sink and adds them to {@code outputSequencesForPrediction} with the
+	 * given penalty.
+	 */
+	protected abstract void constructSequences(Session candidateSession,
+			List<Sequence> outputSequencesForPrediction, boolean skipSimpleSessions, float penalty);
+
+	/**
+	 * Emits the sequences cached for the shape of the session, the same way
+	 * {@link #constructSequences} emits them.
+	 */
+	protected void emitCachedSequences(List<Sequence> cachedSequences, List<Sequence> outputSequencesForPrediction,
+			boolean skipSimpleSessions, float penalty) {
+		for (Sequence sequence : cachedSequences) {
+			sequenceSink.write(sequence.getSequence());
+			sequence.setPenalty(penalty);
+			outputSequencesForPrediction.add(sequence);
+		}
+	}
+
+	@Override
+	public void processSession(Session candidateSession, List<Sequence> outputSequencesForPrediction,
+			boolean skipSimpleSessions, float penalty) {
+		if (shapeCache == null || !isShapeCacheable()) {
+			constructSequences(candidateSession, outputSequencesForPrediction, skipSimpleSessions, penalty);
+			return;
+		}
+		SessionShapeCache.Shape shape = shapeCache.getShape(candidateSession, skipSimpleSessions);
+		List<Sequence> cachedSequences = shapeCache.get(shape);
+		if (cachedSequences != null) {
+			emitCachedSequences(cachedSequences, outputSequencesForPrediction, skipSimpleSessions, penalty);
+			return;
+		}
+		int start = outputSequencesForPrediction.size();
+		constructSequences(candidateSession, outputSequencesForPrediction, skipSimpleSessions, penalty);
+		shapeCache.put(shape, outputSequencesForPrediction.subList(start, outputSequencesForPrediction.size()));
+	}
+
 	@Override
 	public void processSession(Session candidateSession, boolean skipSimpleSessions) {
 		List<Sequence> outputSequences 	= new ArrayList<>();
@@ -71,20 +175,11 @@ public abstract class LinkBasedConstructor extends SessionConstructor {
 
 	public void loadTopology(String topologyFile) {
 		topology.readTopology(topologyFile);
+		clearShapeCache();
 	}
 	
 	@Override
 	public void processExpiredSessions(long currentTime) {
-		Set<String> markToBeRemoved = new HashSet<>();
-		for (String ipAdress : ipToSessions.keySet()) {
-			Session expiredSession 	= ipToSessions.get(ipAdress);
-			if((currentTime - expiredSession.getInitalTime()) > DURATION_THRESHOLD) {
-				markToBeRemoved.add(ipAdress);
-				processSession(expiredSession, skipSimpleSessions);
-			}
-		}
-		for (String ip : markToBeRemoved) {
-			ipToSessions.remove(ip);
-		}
+		expireSessions(currentTime, DURATION_THRESHOLD);
 	}
 }
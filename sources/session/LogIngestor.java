@@ -0,0 +1,304 @@
+package session;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import core.IpAddressKey;
+import core.PageDictionary;
+import parsing.AccessRecord;
+import parsing.ChunkParseTask;
+import parsing.LogParser;
+import parsing.LogRecord;
+import parsing.MappedLogReader;
+import parsing.TimeOrderedLogMerger;
+
+/**
+ * Reads the raw log files, parses each record and hands it over to a
+ * {@link RecordHandler}. The urls are interned in
+ * {@link PageDictionary#getShared()} and the client addresses are packed by
+ * the {@link IpAddressKey} of the ingestor. Shared by the single threaded
+ * session constructors and {@link ShardedSessionReconstructor}, which only
+ * differ in how the records are handled.
+ *
+ * @author Murat Ali Bayir
+ */
+public class LogIngestor {
+
+	/**
+	 * The target size of a single byte range in parallel ingestion.
+	 */
+	public static long PARALLEL_CHUNK_SIZE = 64L * 1024 * 1024;
+	
+	/**
+	 * The number of parsed records buffered per file while merging log files.
+	 */
+	public static int MERGE_READ_AHEAD = 4096;
+
+	private String domainName;
+	private RecordHandler handler;
+	private LogParser parser;
+	private PageDictionary dictionary;
+	private IpAddressKey ipKey;
+	private boolean useMappedParser;
+	private ForkJoinPool ingestionPool;
+	private boolean mergeFilesByTime;
+
+	/**
+	 * @param domainName the domain name that current logs belongs to
+	 * @param handler receives the parsed records
+	 */
+	public LogIngestor(String domainName, RecordHandler handler) {
+		this.domainName = domainName;
+		this.handler = handler;
+		parser = new LogParser(domainName);
+		dictionary = PageDictionary.getShared();
+		ipKey = new IpAddressKey();
+	}
+
+	/**
+	 * @return the key that packs the client addresses, it also formats the
+	 *         clients that are numbered instead of packed.
+	 */
+	public IpAddressKey getIpAddressKey() {
+		return ipKey;
+	}
+
+	void setIpAddressKey(IpAddressKey ipKey) {
+		this.ipKey = ipKey;
+	}
+
+	/**
+	 * Sets whether the log files are parsed over memory mapped buffers by
+	 * {@link MappedLogReader} instead of line by line with {@link LogParser}.
+	 * 
+	 * @param useMappedParser the flag to use the byte level parser
+	 */
+	public void setUseMappedParser(boolean useMappedParser) {
+		this.useMappedParser = useMappedParser;
+	}
+
+	/**
+	 * Sets the pool that parses the chunks of each log file in parallel. The
+	 * sequential ingestion is used if the pool is null.
+	 * 
+	 * @param ingestionPool the fork join pool to parse the log files
+	 */
+	public void setIngestionPool(ForkJoinPool ingestionPool) {
+		this.ingestionPool = ingestionPool;
+	}
+
+	/**
+	 * Sets whether the log files in the input folder are consumed as a single
+	 * access time ordered stream instead of one file after another. Useful
+	 * when the logs are rotated per front-end server.
+	 * 
+	 * @param mergeFilesByTime the flag to merge the log files by access time
+	 */
+	public void setMergeFilesByTime(boolean mergeFilesByTime) {
+		this.mergeFilesByTime = mergeFilesByTime;
+	}
+
+	/**
+	 * Process single log and construct link based sessions.
+	 * 
+	 * @param fileName the file that contains raw logs
+	 * @throws IOException if file is not valid
+	 */
+	public void processSingleLogFile(String fileName) throws IOException{
+		FileInputStream fstream = null;
+		DataInputStream in = null;
+		BufferedReader br = null;
+		String strLine = null;
+		
+		try {
+			fstream = new FileInputStream(fileName);
+		} catch (FileNotFoundException e) {
+			e.printStackTrace();
+		}
+		
+		in = new DataInputStream(fstream);
+		br = new BufferedReader(new InputStreamReader(in));
+		while ((strLine = br.readLine()) != null) {
+				String visitedUrl = parser.getRawUrl(parser.getUrl(strLine));
+				String referenceUrl = parser.omitExternal(parser.getRawUrl(
+						parser.getReferrerField(strLine)));
+				String ipNum  = parser.getIPNumber(strLine);
+				long time = parser.getAccessTime(strLine);
+				if(visitedUrl.indexOf("-") != -1 || referenceUrl.indexOf("-") != -1) {
+					continue;
+				}
+				ipKey.parse(ipNum);
+				dispatchRecord(ipKey.getHigh(), ipKey.getLow(), visitedUrl, referenceUrl, time);
+		}
+			br.close();
+			in.close();
+			fstream.close();
+	}
+	
+	/**
+	 * Process single log over memory mapped buffers and construct link based sessions.
+	 * Produces the same records as {@link #processSingleLogFile(String)} except that
+	 * malformed lines are skipped.
+	 * 
+	 * @param fileName the file that contains raw logs
+	 * @throws IOException if file is not valid
+	 */
+	public void processMappedLogFile(String fileName) throws IOException {
+		MappedLogReader reader = new MappedLogReader(fileName, domainName);
+		LogRecord record = new LogRecord();
+		try {
+			while (reader.next(record)) {
+				if (!record.isValid() || record.containsDash()) {
+					continue;
+				}
+				record.parseIp(ipKey);
+				dispatchRecord(ipKey.getHigh(), ipKey.getLow(), record.getUrl(), record.getReferrerUrl(),
+						record.getAccessTime());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Process single log by parsing line aligned chunks of the file on
+	 * {@code pool}. The chunks are parsed in rounds of the pool's parallelism
+	 * while the previous round is fed to {@link RecordHandler#CreateSessionOrAppendPage}.
+	 * The chunks are replayed in file order and each chunk keeps the order of
+	 * its lines, so the records are dispatched in the same order as by
+	 * {@link #processMappedLogFile(String)} and the constructed sessions are
+	 * the same, whatever the order of the access times in the file.
+	 * 
+	 * @param fileName the file that contains raw logs
+	 * @param pool the fork join pool to parse the chunks
+	 * @throws IOException if file is not valid
+	 */
+	public void processLogFileInParallel(String fileName, ForkJoinPool pool) throws IOException {
+		long[] boundaries = MappedLogReader.splitAtLineBoundaries(fileName, PARALLEL_CHUNK_SIZE);
+		int chunkCount = boundaries.length - 1;
+		int roundSize = Math.max(1, pool.getParallelism());
+		List<ForkJoinTask<List<AccessRecord>>> currentRound = submitRound(fileName, boundaries, 0, roundSize, pool);
+		for (int start = 0; start < chunkCount; start += roundSize) {
+			List<ForkJoinTask<List<AccessRecord>>> nextRound =
+					submitRound(fileName, boundaries, start + roundSize, roundSize, pool);
+			for (ForkJoinTask<List<AccessRecord>> task : currentRound) {
+				List<AccessRecord> chunk;
+				try {
+					chunk = task.join();
+				} catch (RuntimeException exception) {
+					cancel(currentRound);
+					cancel(nextRound);
+					if (exception instanceof UncheckedIOException) {
+						throw ((UncheckedIOException) exception).getCause();
+					}
+					throw exception;
+				}
+				for (AccessRecord record : chunk) {
+					ipKey.parse(record.getIpNumber());
+					dispatchRecord(ipKey.getHigh(), ipKey.getLow(), record.getUrl(), record.getReferrerUrl(),
+							record.getAccessTime());
+				}
+			}
+			currentRound = nextRound;
+		}
+	}
+
+	private static void cancel(List<ForkJoinTask<List<AccessRecord>>> tasks) {
+		for (ForkJoinTask<List<AccessRecord>> task : tasks) {
+			task.cancel(true);
+		}
+	}
+
+	/**
+	 * Process all log files as a single stream ordered by access time. Each file
+	 * is expected to be ordered by access time itself.
+	 * 
+	 * @param fileNames the files that contain raw logs
+	 * @throws IOException if any of the files is not valid
+	 */
+	public void processLogFilesInTimeOrder(List<String> fileNames) throws IOException {
+		TimeOrderedLogMerger merger = new TimeOrderedLogMerger(fileNames, domainName, MERGE_READ_AHEAD,
+				useMappedParser);
+		try {
+			while (merger.hasNext()) {
+				AccessRecord record = merger.next();
+				ipKey.parse(record.getIpNumber());
+				dispatchRecord(ipKey.getHigh(), ipKey.getLow(), record.getUrl(), record.getReferrerUrl(),
+						record.getAccessTime());
+			}
+		} finally {
+			merger.close();
+		}
+	}
+
+	private List<ForkJoinTask<List<AccessRecord>>> submitRound(String fileName, long[] boundaries,
+			int start, int roundSize, ForkJoinPool pool) {
+		List<ForkJoinTask<List<AccessRecord>>> tasks = new ArrayList<>();
+		for (int i = start; i < Math.min(start + roundSize, boundaries.length - 1); i++) {
+			tasks.add(pool.submit(new ChunkParseTask(fileName, domainName, boundaries[i], boundaries[i + 1])));
+		}
+		return tasks;
+	}
+
+	/**
+	 * Interns the urls of a single parsed record, passes it to the session construction
+	 * algorithm and processes the sessions that are expired at the access time of the record.
+	 */
+	private void dispatchRecord(long ipHigh, long ipLow, String visitedUrl, String referenceUrl, long time) {
+		handler.CreateSessionOrAppendPage(ipHigh, ipLow, dictionary.getId(visitedUrl), dictionary.getId(referenceUrl), time);
+		handler.processExpiredSessions(time);
+	}
+
+	/**
+	 * Process each raw log file in the input folder, the sessions that are
+	 * still active at the end are expired.
+	 * 
+	 * @param inputFolder that contains all log files.
+	 */
+	public void processFiles(String inputFolder) {
+		File dir = new File(inputFolder);
+	    File[] children = dir.listFiles();
+	    if (children == null) {
+	    	System.out.println("Either dir does not exist or is not a directory!");
+	    } else if (mergeFilesByTime) {
+	    	List<String> fileNames = new ArrayList<>();
+	    	for (int i = 0; i < children.length; i++) {
+	    		fileNames.add(children[i].getPath());
+	    	}
+	    	try {
+	    		processLogFilesInTimeOrder(fileNames);
+	    	} catch (IOException e) {
+	    		e.printStackTrace();
+	    	}
+	    	System.out.println(fileNames.size() + " files are completed!");
+	    	handler.processExpiredSessions(Long.MAX_VALUE);
+	    } else {
+	        for (int i = 0; i < children.length; i++) {
+	            String filename = children[i].getPath();
+	            System.out.println(i + " th: "  + filename + " is completed!");
+	            try {
+	            	if (ingestionPool != null) {
+	            		processLogFileInParallel(filename, ingestionPool);
+	            	} else if (useMappedParser) {
+	            		processMappedLogFile(filename);
+	            	} else {
+	            		processSingleLogFile(filename);
+	            	}
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+	        }
+	        handler.processExpiredSessions(Long.MAX_VALUE);
+	    }
+	}
+}
@@ -0,0 +1,202 @@
+package session;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import core.SequenceSink;
+import core.Session;
+import session.LinkBasedConstructor.Mode;
+import topology.Topology;
+
+/**
+ * Parses the logs and constructs the time oriented sessions once, then hands
+ * over every expired session to all configured session constructors. Each
+ * constructor runs on its own thread and writes to its own sequence sink.
+ * The sessions reach every constructor in the same order as they do when the
+ * constructor runs alone, and each constructor processes them with its own
+ * flag to skip simple sessions, so the outputs are the same as the ones of
+ * the separate runs.
+ *
+ * @author Murat Ali Bayir
+ *
+ */
+public class MultiHeuristicRunner extends TimeOriented {
+
+	/**
+	 * The number of sessions that can wait for a constructor before the reader blocks.
+	 */
+	public static int QUEUE_CAPACITY = 4096;
+
+	private static final Session END_OF_INPUT = new Session();
+
+	private List<Worker> workers;
+	private boolean finished;
+
+	public MultiHeuristicRunner(String domainName, boolean skipSimpleSessions) {
+		super(domainName, skipSimpleSessions);
+		workers = new ArrayList<>();
+	}
+
+	/**
+	 * Adds a session constructor that receives every expired session. The
+	 * constructor writes to its own sequence sink, see
+	 * {@link SessionConstructor#setSequenceSink(core.SequenceSink)}.
+	 *
+	 * @param name the name of the constructor used in the worker thread name
+	 * @param sessionConstructor the session constructor
+	 */
+	public void addSessionConstructor(String name, SessionConstructor sessionConstructor) {
+		Worker worker = new Worker(name, sessionConstructor);
+		workers.add(worker);
+		worker.thread.start();
+	}
+
+	@Override
+	public void processSession(Session candidateSession, boolean skipSimpleSessions) {
+		for (Worker worker : workers) {
+			// Only the constructors that modify the session need their own copy.
+			worker.put(worker.constructor.modifiesSession() ? candidateSession.copy() : candidateSession);
+		}
+	}
+
+	/**
+	 * Waits until all constructors have processed the sessions handed over so far.
+	 */
+	public void finish() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		for (Worker worker : workers) {
+			worker.put(END_OF_INPUT);
+		}
+		for (Worker worker : workers) {
+			try {
+				worker.thread.join();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+			if (worker.failure != null) {
+				throw new IllegalStateException(worker.thread.getName() + " failed", worker.failure);
+			}
+		}
+	}
+
+	@Override
+	public void ProcessFiles(String inputFolder) {
+		super.ProcessFiles(inputFolder);
+		finish();
+	}
+
+	private class Worker implements Runnable {
+		private SessionConstructor constructor;
+		private BlockingQueue<Session> queue;
+		private Thread thread;
+		private volatile Throwable failure;
+
+		private Worker(String name, SessionConstructor constructor) {
+			this.constructor = constructor;
+			this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+			this.thread = new Thread(this, "heuristic-" + name);
+			this.thread.setDaemon(true);
+		}
+
+		private void put(Session session) {
+			try {
+				queue.put(session);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Session session;
+				while ((session = queue.take()) != END_OF_INPUT) {
+					if (failure != null) {
+						// Keep draining so that the reader is never blocked.
+						continue;
+					}
+					try {
+						constructor.processSession(session, constructor.skipSimpleSessions);
+					} catch (RuntimeException | Error exception) {
+						failure = exception;
+					}
+				}
+			} catch (InterruptedException exception) {
+				failure = exception;
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 6 && args.length != 7) {
+			System.out.print("Usage: MultiHeuristicRunner <inputDir> <topologyFile> <outputDir> <runMode> <domainName> ");
+			System.out.println("[<shapeCacheCapacity>]");
+			System.out.println("Where <runMode> is either 'topology' or 'referrer'");
+			System.out.println("and <shapeCacheCapacity> is the number of session shapes cached by each link based");
+			System.out.println("constructor, 0 (default) turns off the cache");
+			System.out.println("Writes to.txt, ssra.txt, csra.txt, ip.txt and no.txt into <outputDir>");
+			return;
+		}
+
+		String inputFolder		= args[1];
+		String topologyFile		= args[2];
+		String outputFolder		= args[3];
+		Mode runningMode		= "referrer".equals(args[4]) ? Mode.REFERRERMODE : Mode.TOPOLOGYMODE;
+		String domainName		= args[5];
+		int shapeCacheCapacity	= args.length == 7 ? Integer.parseInt(args[6]) : 0;
+
+		Topology topology = new Topology();
+		System.out.println("Topology File: " + topologyFile);
+		topology.readTopology(topologyFile);
+
+		TimeOriented timeOriented = new TimeOriented(domainName, false);
+		SmartSRA smartSRA = new SmartSRA(domainName, runningMode, false);
+		CompleteSRA completeSRA = new CompleteSRA(domainName, runningMode, Integer.MAX_VALUE, false);
+		IntegerProgramming integerProgramming =
+				new IntegerProgramming(domainName, runningMode, Integer.MAX_VALUE, false);
+		NavigationOriented navigationOriented = new NavigationOriented(domainName, Mode.TOPOLOGYMODE, false);
+
+		String[] names = {"to", "ssra", "csra", "ip", "no"};
+		SessionConstructor[] constructors = {timeOriented, smartSRA, completeSRA, integerProgramming,
+				navigationOriented};
+		MultiHeuristicRunner runner = new MultiHeuristicRunner(domainName, false);
+		try {
+			for (int i = 0; i < constructors.length; i++) {
+				constructors[i].setTopology(topology);
+				constructors[i].setSequenceSink(SequenceSink.open(new File(outputFolder, names[i] + ".txt").getPath()));
+				if (shapeCacheCapacity > 0 && constructors[i] instanceof LinkBasedConstructor) {
+					((LinkBasedConstructor) constructors[i]).setShapeCache(new SessionShapeCache(shapeCacheCapacity));
+				}
+				runner.addSessionConstructor(names[i], constructors[i]);
+			}
+		} catch (FileNotFoundException exception) {
+			exception.printStackTrace();
+			return;
+		}
+		runner.ProcessFiles(inputFolder);
+		completeSRA.PrintStats();
+		for (int i = 0; i < constructors.length; i++) {
+			if (constructors[i] instanceof LinkBasedConstructor
+					&& ((LinkBasedConstructor) constructors[i]).getShapeCache() != null) {
+				System.out.println(names[i] + " " + ((LinkBasedConstructor) constructors[i]).getShapeCache());
+			}
+		}
+		for (SessionConstructor constructor : constructors) {
+			try {
+				constructor.getSequenceSink().close();
+			} catch (IOException exception) {
+				exception.printStackTrace();
+			}
+		}
+	}
+}
@@ -1,55 +1,90 @@
 package session;
 
 import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import core.PageIdList;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
+import topology.CsrTopology;
 
 public class NavigationOriented extends LinkBasedConstructor {
 
+	/**
+	 * The algorithm that finds the most recent page with a link towards each page.
+	 */
+	public enum Engine {
+		/**
+		 * Checks the earlier pages from the most recent one until a link is found.
+		 */
+		BACKWARD_SCAN,
+		/**
+		 * Finds the most recent page with a link for all pages at once by
+		 * walking the links of each page, see {@link #findLastReferrers}.
+		 */
+		LAST_REFERRER;
+	}
+
+	private Engine engine;
+
 	public NavigationOriented(String domainName, Mode runningMode, boolean skipSimpleSessions) {
 		super(domainName, runningMode, skipSimpleSessions);
+		this.engine = Engine.LAST_REFERRER;
+	}
+
+	/**
+	 * Sets the algorithm that finds the most recent page with a link, both
+	 * algorithms construct the same sequences.
+	 * 
+	 * @param engine the algorithm to find the most recent page with a link
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+		clearShapeCache();
+	}
+
+	public Engine getEngine() {
+		return engine;
 	}
 
 	@Override
-	public void processSession(Session candidateSession,
+	protected void constructSequences(Session candidateSession,
 			List<Sequence> outputSequencesForPrediction,
 			boolean skipSimpleSessions,
 			float penalty) {
-		if (isSimpleSession(candidateSession) && skipSimpleSessions) {
+		if (skipSimpleSessions && isSimpleSession(candidateSession)) {
 			return ;
 		}
-		List<String> originalSequence = new ArrayList<>();
-		if (!candidateSession.getSequence().isEmpty()) {
-			List<String> candidateSequence = candidateSession.getSequence();
-			for (int i = 0; i < candidateSequence.size(); i++) {
-				originalSequence.add(candidateSequence.get(i));
-			}
+		if (engine == Engine.LAST_REFERRER) {
+			processWithLastReferrers(candidateSession, outputSequencesForPrediction, penalty);
+			return;
 		}
+		PageIdList originalSequence = candidateSession.getSequence().copy();
 		List<Sequence> outputSequences = new ArrayList<>();
 
 		Sequence currentSequence = null; 
 		for (int i = 0; i < originalSequence.size(); i++) {
 			if (i == 0) {
-				currentSequence = new Sequence(candidateSession.getSequence().get(i));
+				currentSequence = new Sequence(originalSequence.getId(i));
 			} else {
-				String currentPage = originalSequence.get(i);
+				int currentPage = originalSequence.getId(i);
 				// Check if i-1 has link towards.
-				String previousPage = originalSequence.get(i-1);
+				int previousPage = originalSequence.getId(i-1);
 				if (topology.checkLink(previousPage, currentPage)) {
 					currentSequence.addPage(currentPage);
 				} else {
 					// Find most recent page that has link.
 					boolean hasReferrer = false;
 					for (int j = (i - 1); j >= 0; j--) {
-						if (topology.checkLink(originalSequence.get(j), currentPage)) {
+						if (topology.checkLink(originalSequence.getId(j), currentPage)) {
 							hasReferrer = true;
 							// Append all pages until j.
 							for (int k = (i-1); k >= j; k--) {
-								currentSequence.addPage(originalSequence.get(k));
+								currentSequence.addPage(originalSequence.getId(k));
 							}
 							break;
 						}
@@ -70,13 +105,93 @@ public class NavigationOriented extends LinkBasedConstructor {
 		
 		for(int i = 0; i < outputSequences.size(); i++) {
 			if(outputSequences.get(i).getLength() >= 1 && outputSequences.get(i).isMaximal()) {
-				outputStream.println(outputSequences.get(i));
+				sequenceSink.write(outputSequences.get(i).getSequence());
+				outputSequences.get(i).setPenalty(penalty);
+				outputSequencesForPrediction.add(outputSequences.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Constructs the same sequences as {@link Engine#BACKWARD_SCAN} from the
+	 * most recent page with a link towards each page.
+	 */
+	private void processWithLastReferrers(Session candidateSession, List<Sequence> outputSequencesForPrediction,
+			float penalty) {
+		PageIdList webPages = candidateSession.getSequence();
+		int[] lastReferrers = findLastReferrers(webPages);
+		List<Sequence> outputSequences = new ArrayList<>();
+
+		Sequence currentSequence = null;
+		for (int i = 0; i < webPages.size(); i++) {
+			int currentPage = webPages.getId(i);
+			if (i == 0) {
+				currentSequence = new Sequence(currentPage);
+			} else if (lastReferrers[i] == i - 1) {
+				currentSequence.addPage(currentPage);
+			} else if (lastReferrers[i] >= 0) {
+				// Append all pages back until the most recent page with link.
+				for (int k = (i - 1); k >= lastReferrers[i]; k--) {
+					currentSequence.addPage(webPages.getId(k));
+				}
+				currentSequence.addPage(currentPage);
+			} else {
+				outputSequences.add(currentSequence);
+				currentSequence = new Sequence(currentPage);
+			}
+		}
+		if (currentSequence != null) {
+			outputSequences.add(currentSequence);
+		}
+
+		for(int i = 0; i < outputSequences.size(); i++) {
+			if(outputSequences.get(i).getLength() >= 1 && outputSequences.get(i).isMaximal()) {
+				sequenceSink.write(outputSequences.get(i).getSequence());
 				outputSequences.get(i).setPenalty(penalty);
 				outputSequencesForPrediction.add(outputSequences.get(i));
 			}
 		}
 	}
 
+	/**
+	 * Finds the most recent earlier position with a link towards each
+	 * position of the session, -1 if there is none. The positions are visited
+	 * in order and each one is recorded as the referrer of the later positions
+	 * it has link towards, so the last recorded referrer is the most recent
+	 * one. The later positions are found through the links of the page when it
+	 * has fewer links than the remaining positions, and by checking the
+	 * remaining positions otherwise. This costs at most the number of links of
+	 * the pages instead of the number of page pairs.
+	 */
+	private int[] findLastReferrers(PageIdList webPages) {
+		int size = webPages.size();
+		int[] lastReferrers = new int[size];
+		Arrays.fill(lastReferrers, -1);
+		PagePositionTable positions = new PagePositionTable(webPages);
+		CsrTopology links = topology.getLinks();
+		for (int j = 0; j < size; j++) {
+			int fromPage = webPages.getId(j);
+			int outDegree = links.getOutDegree(fromPage);
+			if (outDegree < size - j - 1) {
+				for (int k = 0; k < outDegree; k++) {
+					int position = positions.getPosition(links.getLink(fromPage, k));
+					for (; position >= 0; position = positions.getNextPosition(position)) {
+						if (position > j) {
+							lastReferrers[position] = j;
+						}
+					}
+				}
+			} else {
+				for (int i = j + 1; i < size; i++) {
+					if (topology.checkLink(fromPage, webPages.getId(i))) {
+						lastReferrers[i] = j;
+					}
+				}
+			}
+		}
+		return lastReferrers;
+	}
+
 	@Override
 	public void processSessionForPrediction(Session candidateSession,
 			List<Sequence> sequences, boolean skipSimpleSessions, float penalty) {		
@@ -96,12 +211,16 @@ public class NavigationOriented extends LinkBasedConstructor {
 		NavigationOriented navigationOriented = new NavigationOriented(domainName, Mode.TOPOLOGYMODE, false);
 		
 		try {
-			outputStream = new PrintStream(outputFile);
+			navigationOriented.setSequenceSink(SequenceSink.open(outputFile));
 			navigationOriented.loadTopology(topologyFile);
 		} catch (FileNotFoundException exception) {
 			exception.printStackTrace();
 		}
 		navigationOriented.ProcessFiles(inputFolder);
-	    outputStream.close();	
+		try {
+			navigationOriented.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
 	}
 }
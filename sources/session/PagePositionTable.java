@@ -0,0 +1,75 @@
+package session;
+
+import java.util.Arrays;
+
+import core.PageIdList;
+
+/**
+ * Open addressing table from the page ids of a session to the first position
+ * of each page. The later positions of a page visited more than once are
+ * chained by {@link #getNextPosition(int)}.
+ *
+ * @author Murat Ali Bayir
+ */
+class PagePositionTable {
+
+	private int[] pages;
+	private int[] positions;
+	private int[] lastPositions;
+	private int[] nextPositions;
+	private int mask;
+
+	PagePositionTable(PageIdList webPages) {
+		int size = webPages.size();
+		int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+		pages = new int[capacity];
+		positions = new int[capacity];
+		lastPositions = new int[capacity];
+		nextPositions = new int[size];
+		mask = capacity - 1;
+		Arrays.fill(positions, -1);
+		Arrays.fill(nextPositions, -1);
+		for (int i = 0; i < size; i++) {
+			int page = webPages.getId(i);
+			int slot = mix(page) & mask;
+			while (positions[slot] >= 0 && pages[slot] != page) {
+				slot = (slot + 1) & mask;
+			}
+			if (positions[slot] >= 0) {
+				nextPositions[lastPositions[slot]] = i;
+			} else {
+				pages[slot] = page;
+				positions[slot] = i;
+			}
+			lastPositions[slot] = i;
+		}
+	}
+
+	private static int mix(int page) {
+		int hash = page * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * @return the first position of the page with id {@code page}, -1 if the
+	 *         page is not in the session
+	 */
+	int getPosition(int page) {
+		int slot = mix(page) & mask;
+		while (positions[slot] >= 0) {
+			if (pages[slot] == page) {
+				return positions[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the next position of the page at {@code position}, -1 if the
+	 *         page is not visited again
+	 */
+	int getNextPosition(int position) {
+		return nextPositions[position];
+	}
+}
@@ -0,0 +1,31 @@
+package session;
+
+/**
+ * Receives the records parsed by a {@link LogIngestor} in the order they are
+ * read, together with the access time that the sessions constructed so far
+ * can expire on.
+ *
+ * @author Murat Ali Bayir
+ */
+public interface RecordHandler {
+
+	/**
+	 * Creates session with the current {@code visitedPage} or append this page to an exiting session
+	 * with the same IP if the new page is visited in close proximity.
+	 *
+	 * @param ipHigh the high bits of the ip number in the current web request, see {@link core.IpAddressKey}
+	 * @param ipLow the low bits of the ip number in the current web request
+	 * @param visitedPage the id of the visited page in the current web request
+	 * @param refUrl the id of the url that is visited before the current web request
+	 * @param visitTime the visit time of the page
+	 */
+	void CreateSessionOrAppendPage(long ipHigh, long ipLow, int visitedPage, int refUrl, long visitTime);
+
+	/**
+	 * Process the expired sessions based on current time.
+	 *
+	 * @param currentTime the current time for checking expiration condition of
+	 * 		  sessions constructed so far.
+	 */
+	void processExpiredSessions(long currentTime);
+}
@@ -1,37 +1,41 @@
 package session;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import parsing.LogParser;
 import topology.Topology;
+import core.IpAddressKey;
+import core.PageDictionary;
+import core.PageIdList;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 
-public abstract class SessionConstructor {
+public abstract class SessionConstructor implements RecordHandler {
 	
 	protected String domainName;
-	protected Hashtable<String, Session> ipToSessions;
-	protected LogParser parser;
+	protected SessionTable ipToSessions;
+	protected ExpirationQueue expirationQueue;
 	protected Topology topology;
 	protected long numberOfTOSessions;
 	protected boolean skipSimpleSessions;
 	protected float stepPenalty = 0.1f;
+	protected PageDictionary dictionary;
+	private LogIngestor ingestor;
+	protected SequenceSink sequenceSink;
 	
 	public SessionConstructor(String domainName, boolean skipSimpleSessions) {
 		this.skipSimpleSessions = skipSimpleSessions;
 		this.domainName = domainName;
-		ipToSessions = new Hashtable<>();
+		ipToSessions = new SessionTable();
+		expirationQueue = new ExpirationQueue();
 		topology = new Topology();
-		parser = new LogParser(domainName);
+		dictionary = PageDictionary.getShared();
+		ingestor = new LogIngestor(domainName, this);
 		numberOfTOSessions = 0;
+		sequenceSink = SequenceSink.DISCARD;
 		
 	}
 	
@@ -39,10 +43,62 @@ public abstract class SessionConstructor {
 		this.topology = topology;
 	}
 	
-	public void setIpToSessions(Hashtable<String, Session> ipToSessions) {
+	public void setIpToSessions(SessionTable ipToSessions) {
 		this.ipToSessions = ipToSessions;
 	}
 
+	/**
+	 * Sets the key that parses the client addresses. The clients that are not
+	 * ip addresses are numbered by the key, so a constructor that is given
+	 * records parsed by another constructor must share its key.
+	 */
+	void setIpAddressKey(IpAddressKey ipKey) {
+		ingestor.setIpAddressKey(ipKey);
+	}
+
+	/**
+	 * Sets the sink that the constructed sequences are written to, the
+	 * sequences are discarded until a sink is set.
+	 * 
+	 * @param sequenceSink the sequence sink of the constructor
+	 */
+	public void setSequenceSink(SequenceSink sequenceSink) {
+		this.sequenceSink = sequenceSink;
+	}
+
+	public SequenceSink getSequenceSink() {
+		return sequenceSink;
+	}
+
+	/**
+	 * @return the ingestor that reads the log files and passes their records
+	 *         to this constructor.
+	 */
+	public LogIngestor getLogIngestor() {
+		return ingestor;
+	}
+
+	/**
+	 * @see LogIngestor#setUseMappedParser(boolean)
+	 */
+	public void setUseMappedParser(boolean useMappedParser) {
+		ingestor.setUseMappedParser(useMappedParser);
+	}
+
+	/**
+	 * @see LogIngestor#setIngestionPool(ForkJoinPool)
+	 */
+	public void setIngestionPool(ForkJoinPool ingestionPool) {
+		ingestor.setIngestionPool(ingestionPool);
+	}
+
+	/**
+	 * @see LogIngestor#setMergeFilesByTime(boolean)
+	 */
+	public void setMergeFilesByTime(boolean mergeFilesByTime) {
+		ingestor.setMergeFilesByTime(mergeFilesByTime);
+	}
+
 	/**
 	 * Process the session according to current session construction algorithm.
 	 * 
@@ -81,18 +137,44 @@ public abstract class SessionConstructor {
 			boolean skipSimpleSessions,
 			float penalty);
 
+	/**
+	 * Creates session with the current {@code visitedPage} or append this page to an exiting session
+	 * with the same IP if the new page is visited in close proximity.
+	 * 
+	 * @param ipHigh the high bits of the ip number in the current web request, see {@link IpAddressKey}
+	 * @param ipLow the low bits of the ip number in the current web request
+	 * @param visitedPage the id of the visited page in the current web request
+	 * @param refUrl the id of the url that is visited before the current web request
+	 * @param visitTime the visit time of the page
+	 */
+	public abstract void CreateSessionOrAppendPage(long ipHigh, long ipLow, int visitedPage, int refUrl,
+			long visitTime);
+
 	/**
 	 * Creates session with the current {@code visitedPage} or append this page to an exiting session
 	 * with the same IP if the new page is visited in close proximity.
 	 * 
 	 * @param ipNo the ip number in the current web request
-	 * @param visitedPage the visited page in the current web request
-	 * @param refUrl the url that is visited before the current web request
+	 * @param visitedPage the id of the visited page in the current web request
+	 * @param refUrl the id of the url that is visited before the current web request
 	 * @param visitTime the visit time of the page
 	 */
-	public abstract void CreateSessionOrAppendPage(String ipNo, String visitedPage, String refUrl, long visitTime);
+	public void CreateSessionOrAppendPage(String ipNo, int visitedPage, int refUrl, long visitTime) {
+		IpAddressKey ipKey = ingestor.getIpAddressKey();
+		ipKey.parse(ipNo);
+		CreateSessionOrAppendPage(ipKey.getHigh(), ipKey.getLow(), visitedPage, refUrl, visitTime);
+	}
 	
 	
+	/**
+	 * @return true if {@link #processSession(Session, boolean)} modifies the
+	 *         session, such constructors are given a copy when the session is
+	 *         shared with other constructors.
+	 */
+	public boolean modifiesSession() {
+		return false;
+	}
+
 	/**
 	 * Process the expired sessions based on current time.
 	 * 
@@ -100,46 +182,33 @@ public abstract class SessionConstructor {
 	 * 		  sessions constructed so far.
 	 */
 	public abstract void processExpiredSessions(long currentTime);
-	
+
 	/**
-	 * Process single log and construct link based sessions.
-	 * 
-	 * @param fileName the file that contains raw logs
-	 * @throws IOException if file is not valid
+	 * Puts {@code session} to the active sessions of its client and schedules it
+	 * to expire when its duration exceeds {@code durationThreshold}.
 	 */
-	public void processSingleLogFile(String fileName) throws IOException{
-		FileInputStream fstream = null;
-		DataInputStream in = null;
-		BufferedReader br = null;
-		String strLine = null;
-		
-		try {
-			fstream = new FileInputStream(fileName);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+	protected void startSession(Session session, long durationThreshold) {
+		if (IpAddressKey.isNumbered(session.getIpHigh())) {
+			session.setIpNumber(ingestor.getIpAddressKey().format(session.getIpHigh(), session.getIpLow()));
 		}
-		
-		in = new DataInputStream(fstream);
-		br = new BufferedReader(new InputStreamReader(in));
-		int counter=0;
-		while ((strLine = br.readLine()) != null) {
-				String visitedUrl = parser.getRawUrl(parser.getUrl(strLine));
-				String referenceUrl = parser.omitExternal(parser.getRawUrl(
-						parser.getReferrerField(strLine)));
-				String ipNum  = parser.getIPNumber(strLine);
-				long time = parser.getAccessTime(strLine);
-				if(visitedUrl.indexOf("-") != -1 || referenceUrl.indexOf("-") != -1) {
-					continue;
-				}
-				CreateSessionOrAppendPage(ipNum, visitedUrl, referenceUrl, time);
-				if((counter % 1000) == 0) {
-					processExpiredSessions(time);
-				}
-				counter++;
+		ipToSessions.put(session.getIpHigh(), session.getIpLow(), session);
+		expirationQueue.add(session.getInitalTime() + durationThreshold, session);
+	}
+
+	/**
+	 * Processes and removes the active sessions whose duration exceeds
+	 * {@code durationThreshold} at {@code currentTime}. Only the sessions that
+	 * expire are visited. The sessions that were already processed when their
+	 * client started a new session are skipped.
+	 */
+	protected void expireSessions(long currentTime, long durationThreshold) {
+		while (expirationQueue.peekDeadline() < currentTime) {
+			Session expiredSession = expirationQueue.poll();
+			if (ipToSessions.get(expiredSession.getIpHigh(), expiredSession.getIpLow()) == expiredSession) {
+				ipToSessions.remove(expiredSession.getIpHigh(), expiredSession.getIpLow());
+				processSession(expiredSession, skipSimpleSessions);
+			}
 		}
-			br.close();
-			in.close();
-			fstream.close();
 	}
 	
 	/**
@@ -152,13 +221,15 @@ public abstract class SessionConstructor {
 		if (candidateSession.getSequence().size() <= 1) {
 			return true;
 		} else {
-			List<String> visitedPages = candidateSession.getSequence();
-			List<String> references = candidateSession.getRefSequence();
+			PageIdList visitedPages = candidateSession.getSequence();
+			PageIdList references = candidateSession.getRefSequence();
+			PagePositionTable positions = new PagePositionTable(visitedPages);
+			int external = dictionary.lookup(LogParser.EXTERNAL_PLACEHOLDER);
 			for (int i = 1; i < visitedPages.size(); i++) {
-				if (!references.get(i).trim().equals(visitedPages.get(i - 1).trim())) {
-					if (!references.get(i).trim().equals(LogParser.EXTERNAL_PLACEHOLDER)) {
-						String reference = references.get(i);
-						if (visitedPages.indexOf(reference) < (i - 1) && visitedPages.indexOf(reference) >= 0) {
+				if (references.getId(i) != visitedPages.getId(i - 1)) {
+					if (references.getId(i) != external) {
+						int reference = positions.getPosition(references.getId(i));
+						if (reference < (i - 1) && reference >= 0) {
 							return false;
 						}
 					}
@@ -168,27 +239,22 @@ public abstract class SessionConstructor {
 		return true;
 	}
 
+	/**
+	 * Process single log and construct link based sessions.
+	 * 
+	 * @param fileName the file that contains raw logs
+	 * @throws IOException if file is not valid
+	 */
+	public void processSingleLogFile(String fileName) throws IOException {
+		ingestor.processSingleLogFile(fileName);
+	}
+
 	/**
 	 * Process each raw log file in the input folder.
 	 * 
 	 * @param inputFolder that contains all log files.
 	 */
 	public void ProcessFiles(String inputFolder) {
-		File dir = new File(inputFolder);
-	    File[] children = dir.listFiles();
-	    if (children == null) {
-	    	System.out.println("Either dir does not exist or is not a directory!");
-	    } else {
-	        for (int i = 0; i < children.length; i++) {
-	            String filename = children[i].getPath();
-	            System.out.println(i + " th: "  + filename + " is completed!");
-	            try {
-					processSingleLogFile(filename);
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-	        }
-	        processExpiredSessions(Long.MAX_VALUE);
-	    }
+		ingestor.processFiles(inputFolder);
 	}
 }
@@ -0,0 +1,156 @@
+package session;
+
+import core.PageIdList;
+import core.Session;
+import session.LinkBasedConstructor.Mode;
+import topology.Topology;
+
+/**
+ * Answers whether the page at a position of a session is referrer of the
+ * page at another position in constant time. The index is built once per
+ * session, in referrer mode it keeps the position of the referrer of every
+ * position, in topology mode it keeps the links between all positions as a
+ * bitset that is allocated on the first check and filled as the positions
+ * are checked. Sessions longer than {@link #MAX_MATRIX_PAGES} pages check
+ * the topology directly, since the bitset grows with the square of the
+ * session length.
+ *
+ * A page may be visited more than once in a session, the answers are the same
+ * as {@link LinkBasedConstructor#isReferrer(int, int, Session)}, which looks
+ * at the first visit of the page.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SessionLinkIndex {
+
+	/**
+	 * The longest session whose links are kept in a bitset, the two bitsets of
+	 * such a session take {@code MAX_MATRIX_PAGES^2 / 4} bytes.
+	 */
+	public static int MAX_MATRIX_PAGES = 2048;
+
+	private Mode runningMode;
+	private PageIdList webPages;
+	private int size;
+
+	/**
+	 * The first position of the page at each position.
+	 */
+	private int[] firstPositions;
+
+	/**
+	 * The first position of the referrer of each position, -1 if the referrer
+	 * is not in the session.
+	 */
+	private int[] referrerPositions;
+
+	/**
+	 * Bit {@code from * size + to} is set if the page at {@code from} has a
+	 * link to the page at {@code to}, only used in topology mode and null
+	 * until the first check.
+	 */
+	private long[] links;
+
+	/**
+	 * Bit {@code from * size + to} is set if the link is checked.
+	 */
+	private long[] checked;
+	private Topology topology;
+
+	private PagePositionTable positions;
+
+	private boolean isSimpleSession;
+
+	/**
+	 * @param session the session to index, the session should not be modified
+	 *        while the index is used
+	 * @param runningMode the mode that decides whether a page is referrer of another page
+	 * @param topology the topology used in topology mode
+	 * @param externalPage the id of the referrer of the pages visited from other domains
+	 */
+	public SessionLinkIndex(Session session, Mode runningMode, Topology topology, int externalPage) {
+		this.runningMode = runningMode;
+		this.webPages = session.getSequence();
+		this.size = webPages.size();
+		PageIdList references = session.getRefSequence();
+
+		positions = new PagePositionTable(webPages);
+		firstPositions = new int[size];
+		for (int i = 0; i < size; i++) {
+			firstPositions[i] = positions.getPosition(webPages.getId(i));
+		}
+
+		referrerPositions = new int[size];
+		isSimpleSession = true;
+		for (int i = 0; i < size; i++) {
+			int referrer = references.getId(i);
+			referrerPositions[i] = getPosition(referrer);
+			if (i > 0 && referrer != webPages.getId(i - 1) && referrer != externalPage
+					&& referrerPositions[i] >= 0 && referrerPositions[i] < i - 1) {
+				isSimpleSession = false;
+			}
+		}
+
+		this.topology = topology;
+	}
+
+	/**
+	 * @return the first position of the page with id {@code page}, -1 if the
+	 *         page is not in the session
+	 */
+	public int getPosition(int page) {
+		return positions.getPosition(page);
+	}
+
+	/**
+	 * @return the first position of the referrer of the page at
+	 *         {@code position}, -1 if the referrer is not in the session
+	 */
+	public int getReferrerPosition(int position) {
+		return referrerPositions[position];
+	}
+
+	/**
+	 * Checks whether the page at {@code fromPosition} is referrer of the page at {@code toPosition}.
+	 */
+	public boolean isReferrer(int fromPosition, int toPosition) {
+		if (runningMode == Mode.REFERRERMODE) {
+			return referrerPositions[firstPositions[toPosition]] == firstPositions[fromPosition];
+		} else if (size > MAX_MATRIX_PAGES) {
+			return topology.checkLink(webPages.getId(fromPosition), webPages.getId(toPosition));
+		} else {
+			if (links == null) {
+				links = new long[(int) (((long) size * size + 63) >>> 6)];
+				checked = new long[links.length];
+			}
+			long bit = (long) fromPosition * size + toPosition;
+			int word = (int) (bit >>> 6);
+			if ((checked[word] & (1L << bit)) == 0L) {
+				checked[word] |= 1L << bit;
+				if (topology.checkLink(webPages.getId(fromPosition), webPages.getId(toPosition))) {
+					links[word] |= 1L << bit;
+				}
+			}
+			return (links[word] & (1L << bit)) != 0L;
+		}
+	}
+
+	/**
+	 * Checks whether the page with id {@code fromPage} is referrer of the page at
+	 * {@code toPosition}, where {@code fromPage} is a page of the session.
+	 */
+	public boolean isReferrerPage(int fromPage, int toPosition) {
+		return isReferrer(getPosition(fromPage), toPosition);
+	}
+
+	/**
+	 * @return the same as {@link SessionConstructor#isSimpleSession(Session)}
+	 */
+	public boolean isSimpleSession() {
+		return size <= 1 || isSimpleSession;
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,167 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import core.PageIdList;
+import core.Sequence;
+import core.Session;
+
+/**
+ * Bounded least recently used cache of the sequences constructed for a
+ * session shape, which is the sequence of the visited pages, the sequence of
+ * their referrers and whether simple sessions are skipped. Sessions with the
+ * same shape result in the same sequences, so a constructor can emit the
+ * cached sequences instead of constructing them again, see
+ * {@link LinkBasedConstructor#setShapeCache(SessionShapeCache)}. The cache
+ * must be cleared when the constructor changes in a way that changes its
+ * sequences, such as its engine or topology.
+ *
+ * The keys are looked up by a hash of the ids and compared id by id, so a
+ * hash collision never returns the sequences of another shape. Not
+ * synchronized, each session constructor owns its cache.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SessionShapeCache {
+
+	/**
+	 * The number of shapes kept by default.
+	 */
+	public static int DEFAULT_CAPACITY = 4096;
+
+	private LinkedHashMap<Shape, List<Sequence>> entries;
+	private long hitCount;
+	private long missCount;
+
+	public SessionShapeCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of shapes kept, the least recently used shape
+	 *        is removed when a new shape does not fit
+	 */
+	public SessionShapeCache(final int capacity) {
+		entries = new LinkedHashMap<Shape, List<Sequence>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Shape, List<Sequence>> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Captures the shape of {@code session}, the shape does not change if the
+	 * session is modified later.
+	 *
+	 * @param session the session
+	 * @param skipSimpleSessions whether the sequences of simple sessions are skipped
+	 */
+	public Shape getShape(Session session, boolean skipSimpleSessions) {
+		return new Shape(session.getSequence(), session.getRefSequence(), skipSimpleSessions);
+	}
+
+	/**
+	 * @return copies of the sequences cached for {@code shape}, null if the shape is not cached
+	 */
+	public List<Sequence> get(Shape shape) {
+		List<Sequence> sequences = entries.get(shape);
+		if (sequences == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		List<Sequence> result = new ArrayList<>(sequences.size());
+		for (Sequence sequence : sequences) {
+			result.add(copy(sequence));
+		}
+		return result;
+	}
+
+	/**
+	 * Caches copies of {@code sequences} as the sequences of {@code shape}.
+	 */
+	public void put(Shape shape, List<Sequence> sequences) {
+		List<Sequence> cached = new ArrayList<>(sequences.size());
+		for (Sequence sequence : sequences) {
+			cached.add(copy(sequence));
+		}
+		entries.put(shape, cached);
+	}
+
+	private static Sequence copy(Sequence sequence) {
+		Sequence copy = sequence.copy();
+		copy.setOutDegree(sequence.getOutDegree());
+		copy.setNumberOfExtension(sequence.getNumberOfExtension());
+		copy.setPenalty(sequence.getPenalty());
+		return copy;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return the number of cached shapes
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	@Override
+	public String toString() {
+		long total = hitCount + missCount;
+		return String.format("Shapes: %d Hits: %d Misses: %d Hit ratio: %.3f", entries.size(), hitCount, missCount,
+				total == 0 ? 0.0 : (double) hitCount / total);
+	}
+
+	/**
+	 * The page and referrer ids of a session and whether simple sessions are skipped.
+	 */
+	public static class Shape {
+		private int[] pages;
+		private int[] referrers;
+		private boolean skipSimpleSessions;
+		private int hash;
+
+		private Shape(PageIdList pages, PageIdList referrers, boolean skipSimpleSessions) {
+			this.pages = pages.toIdArray();
+			this.referrers = referrers.toIdArray();
+			this.skipSimpleSessions = skipSimpleSessions;
+			this.hash = 2 * (31 * Arrays.hashCode(this.pages) + Arrays.hashCode(this.referrers))
+					+ (skipSimpleSessions ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (this == object) {
+				return true;
+			}
+			if (!(object instanceof Shape)) {
+				return false;
+			}
+			Shape other = (Shape) object;
+			return hash == other.hash && skipSimpleSessions == other.skipSimpleSessions
+					&& Arrays.equals(pages, other.pages) && Arrays.equals(referrers, other.referrers);
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package session;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Hashtable;
 
+import core.PageIdList;
+import core.SequenceFileReader;
+
 public class SessionStats {
 
 	public static int[] HISTOGRAM_XAXIS = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
@@ -14,6 +13,7 @@ public class SessionStats {
 	public static void main(String[] args) throws IOException {
 		if(args.length < 2) {
 			System.out.println("Usage: SessionStats <sessionFile>");
+			System.out.println("Where <sessionFile> is either a text or a binary sequence file");
 			return;
 		}
 		for (int i = 1; i < args.length; i++) {
@@ -58,23 +58,17 @@ public class SessionStats {
 	}
 
 	public void processSingleLogFile() throws IOException{
-		DataInputStream inputStream = null;
-		BufferedReader bufferedReader = null;
-		String line = null;
+		PageIdList sequence = null;
 		System.out.println("Input File " + inputFile);
-		FileInputStream fr =  new FileInputStream(inputFile);
-		inputStream = new DataInputStream(fr);
-		bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-		while ((line = bufferedReader.readLine()) != null) {
-			int length = line.split("-").length;
+		SequenceFileReader reader = new SequenceFileReader(inputFile);
+		while ((sequence = reader.next()) != null) {
+			int length = sequence.size();
 			if (histogram.containsKey(length)) {
 				histogram.put(length, histogram.get(length) + 1);
 			} else {
 				histogram.put(length, 1);
 			}
 		}
-			bufferedReader.close();
-			inputStream.close();
-			fr.close();
+		reader.close();
 	}
 }
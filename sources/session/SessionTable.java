@@ -0,0 +1,157 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.Session;
+
+/**
+ * Open addressing table of the active sessions keyed by the client address
+ * packed into two longs, see {@link core.IpAddressKey}. Uses linear probing
+ * with backward shift deletion, so there are no tombstones and no entry
+ * objects. Not synchronized, each session constructor owns its table.
+ *
+ * @author Murat Ali Bayir
+ */
+public class SessionTable {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] highs;
+	private long[] lows;
+	private Session[] sessions;
+	private int size;
+	private int mask;
+
+	public SessionTable() {
+		this(1024);
+	}
+
+	public SessionTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		highs = new long[capacity];
+		lows = new long[capacity];
+		sessions = new Session[capacity];
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	private int slot(long high, long low) {
+		long hash = high * 0x9E3779B97F4A7C15L + low;
+		hash ^= (hash >>> 33);
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= (hash >>> 33);
+		return (int) hash & mask;
+	}
+
+	private int find(long high, long low) {
+		int index = slot(high, low);
+		while (sessions[index] != null) {
+			if (highs[index] == high && lows[index] == low) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	public Session get(long high, long low) {
+		int index = find(high, low);
+		return index >= 0 ? sessions[index] : null;
+	}
+
+	public boolean containsKey(long high, long low) {
+		return find(high, low) >= 0;
+	}
+
+	/**
+	 * Puts the session of the client, replaces the previous one if any.
+	 */
+	public void put(long high, long low, Session session) {
+		int index = slot(high, low);
+		while (sessions[index] != null) {
+			if (highs[index] == high && lows[index] == low) {
+				sessions[index] = session;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+		highs[index] = high;
+		lows[index] = low;
+		sessions[index] = session;
+		size++;
+		if (size > sessions.length * LOAD_FACTOR) {
+			resize();
+		}
+	}
+
+	/**
+	 * Removes the session of the client.
+	 *
+	 * @return the removed session or null if there is no session of the client
+	 */
+	public Session remove(long high, long low) {
+		int index = find(high, low);
+		if (index < 0) {
+			return null;
+		}
+		Session removed = sessions[index];
+		// Shift back the following entries of the probe sequence.
+		int hole = index;
+		int next = (hole + 1) & mask;
+		while (sessions[next] != null) {
+			int home = slot(highs[next], lows[next]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				highs[hole] = highs[next];
+				lows[hole] = lows[next];
+				sessions[hole] = sessions[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		sessions[hole] = null;
+		size--;
+		return removed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the active sessions in table order.
+	 */
+	public List<Session> values() {
+		List<Session> values = new ArrayList<>(size);
+		for (int i = 0; i < sessions.length; i++) {
+			if (sessions[i] != null) {
+				values.add(sessions[i]);
+			}
+		}
+		return values;
+	}
+
+	public void clear() {
+		allocate(sessions.length);
+	}
+
+	private void resize() {
+		long[] oldHighs = highs;
+		long[] oldLows = lows;
+		Session[] oldSessions = sessions;
+		allocate(oldSessions.length * 2);
+		for (int i = 0; i < oldSessions.length; i++) {
+			if (oldSessions[i] != null) {
+				put(oldHighs[i], oldLows[i], oldSessions[i]);
+			}
+		}
+	}
+}
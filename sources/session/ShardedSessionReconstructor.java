@@ -0,0 +1,423 @@
+package session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+import core.PageIdList;
+import core.SequenceSink;
+import session.LinkBasedConstructor.Mode;
+import topology.Topology;
+
+/**
+ * Constructs sessions on several threads. The parsed records are routed by
+ * the client address to a fixed shard, each shard owns its own active
+ * sessions and its own session constructor created by the factory. Since all
+ * records of a client end up in the same shard, the constructed sessions are
+ * the same as the ones of a single constructor.
+ *
+ * Each shard writes its sequences to a temporary part file. The parts are
+ * written to the sequence sink in shard order by {@link #finish()}, so the
+ * output only depends on the input and the number of shards.
+ *
+ * The log files are read by a {@link LogIngestor} that passes the records to
+ * this reconstructor, the same way as it passes them to a single
+ * {@link SessionConstructor}.
+ *
+ * @author Murat Ali Bayir
+ *
+ */
+public class ShardedSessionReconstructor implements RecordHandler {
+
+	/**
+	 * The number of records handed over to a shard at once.
+	 */
+	public static int BATCH_SIZE = 1024;
+
+	/**
+	 * The number of batches that can wait for a shard before the reader blocks.
+	 */
+	public static int QUEUE_CAPACITY = 16;
+
+	private static final RecordBatch END_OF_INPUT = new RecordBatch(0);
+
+	private LogIngestor ingestor;
+	private SequenceSink sequenceSink;
+	private Shard[] shards;
+	private boolean finished;
+
+	/**
+	 * @param domainName the domain name that current logs belongs to
+	 * @param shardCount the number of threads that construct sessions
+	 * @param factory creates the session constructor of each shard
+	 * @throws IOException if the part files can not be created
+	 */
+	public ShardedSessionReconstructor(String domainName, int shardCount, Supplier<SessionConstructor> factory)
+			throws IOException {
+		ingestor = new LogIngestor(domainName, this);
+		sequenceSink = SequenceSink.DISCARD;
+		shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard(i, factory.get());
+			// The shards format the clients numbered by the ingestor.
+			shards[i].constructor.setIpAddressKey(ingestor.getIpAddressKey());
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	/**
+	 * @return the session constructors of the shards in shard order
+	 */
+	public List<SessionConstructor> getShardConstructors() {
+		List<SessionConstructor> constructors = new ArrayList<>();
+		for (Shard shard : shards) {
+			constructors.add(shard.constructor);
+		}
+		return constructors;
+	}
+
+	/**
+	 * @return the ingestor that reads the log files and passes their records
+	 *         to the shards.
+	 */
+	public LogIngestor getLogIngestor() {
+		return ingestor;
+	}
+
+	/**
+	 * Sets the sink that the sequences of all shards are written to by
+	 * {@link #finish()}, the sequences are discarded until a sink is set.
+	 */
+	public void setSequenceSink(SequenceSink sequenceSink) {
+		this.sequenceSink = sequenceSink;
+	}
+
+	public SequenceSink getSequenceSink() {
+		return sequenceSink;
+	}
+
+	/**
+	 * Sets the topology of all shards, the topology is only read by the shards.
+	 */
+	public void setTopology(Topology topology) {
+		for (Shard shard : shards) {
+			shard.constructor.setTopology(topology);
+		}
+	}
+
+	private Shard getShard(long ipHigh, long ipLow) {
+		long hash = ipHigh * 0x9E3779B97F4A7C15L + ipLow;
+		hash ^= (hash >>> 29);
+		hash *= 0xBF58476D1CE4E5B9L;
+		hash ^= (hash >>> 32);
+		return shards[(int) ((hash & Long.MAX_VALUE) % shards.length)];
+	}
+
+	@Override
+	public void CreateSessionOrAppendPage(long ipHigh, long ipLow, int visitedPage, int refUrl, long visitTime) {
+		Shard shard = getShard(ipHigh, ipLow);
+		shard.pending.add(ipHigh, ipLow, visitedPage, refUrl, visitTime);
+		if (shard.pending.size == BATCH_SIZE) {
+			shard.flush();
+		}
+	}
+
+	/**
+	 * Passes the current time to every shard. A shard processes its expired
+	 * sessions on the latest time passed since the previous record of the
+	 * shard, right before the next record of the shard, so the sessions expire
+	 * the same way as they do in a single constructor.
+	 */
+	@Override
+	public void processExpiredSessions(long currentTime) {
+		for (Shard shard : shards) {
+			shard.pending.advanceClock(currentTime);
+		}
+	}
+
+	/**
+	 * Hands over the remaining records, waits for the shards and appends
+	 * their outputs to the output stream in shard order.
+	 *
+	 * @throws IOException if the part files can not be read
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		for (Shard shard : shards) {
+			shard.flush();
+			shard.put(END_OF_INPUT);
+		}
+		for (Shard shard : shards) {
+			try {
+				shard.thread.join();
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+		}
+		for (Shard shard : shards) {
+			shard.part.close();
+			if (shard.failure != null) {
+				throw new IllegalStateException("Shard " + shard.index + " failed", shard.failure);
+			}
+		}
+		for (Shard shard : shards) {
+			shard.part.copyTo(sequenceSink);
+			shard.part.delete();
+		}
+		sequenceSink.flush();
+	}
+
+	/**
+	 * Process each raw log file in the input folder and writes the sequences
+	 * of all shards to the sequence sink.
+	 * 
+	 * @param inputFolder that contains all log files.
+	 */
+	public void ProcessFiles(String inputFolder) {
+		ingestor.processFiles(inputFolder);
+		try {
+			finish();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Records of a single shard in parallel arrays.
+	 */
+	private static class RecordBatch {
+		private long[] ipHighs;
+		private long[] ipLows;
+		private int[] visitedPages;
+		private int[] refUrls;
+		private long[] visitTimes;
+		private long[] clocks;
+		private long initialClock;
+		private int size;
+
+		private RecordBatch(int capacity) {
+			ipHighs = new long[capacity];
+			ipLows = new long[capacity];
+			visitedPages = new int[capacity];
+			refUrls = new int[capacity];
+			visitTimes = new long[capacity];
+			clocks = new long[capacity];
+			initialClock = Long.MIN_VALUE;
+		}
+
+		private void add(long ipHigh, long ipLow, int visitedPage, int refUrl, long visitTime) {
+			ipHighs[size] = ipHigh;
+			ipLows[size] = ipLow;
+			visitedPages[size] = visitedPage;
+			refUrls[size] = refUrl;
+			visitTimes[size] = visitTime;
+			clocks[size] = Long.MIN_VALUE;
+			size++;
+		}
+
+		/**
+		 * Keeps the latest time after the last record of the batch, or before
+		 * the first record if the batch is empty.
+		 */
+		private void advanceClock(long currentTime) {
+			if (size > 0) {
+				clocks[size - 1] = Math.max(clocks[size - 1], currentTime);
+			} else {
+				initialClock = Math.max(initialClock, currentTime);
+			}
+		}
+	}
+
+	private static class Shard implements Runnable {
+		private int index;
+		private SessionConstructor constructor;
+		private BlockingQueue<RecordBatch> queue;
+		private RecordBatch pending;
+		private PartFile part;
+		private Thread thread;
+		private volatile Throwable failure;
+
+		private Shard(int index, SessionConstructor constructor) throws IOException {
+			this.index = index;
+			this.constructor = constructor;
+			this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+			this.pending = new RecordBatch(BATCH_SIZE);
+			this.part = new PartFile("shard-" + index + "-");
+			constructor.setSequenceSink(part);
+			this.thread = new Thread(this, "session-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		private void flush() {
+			put(pending);
+			pending = new RecordBatch(BATCH_SIZE);
+		}
+
+		private void put(RecordBatch batch) {
+			try {
+				queue.put(batch);
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(exception);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				RecordBatch batch;
+				while ((batch = queue.take()) != END_OF_INPUT) {
+					if (failure != null) {
+						// Keep draining so that the reader is never blocked.
+						continue;
+					}
+					try {
+						if (batch.initialClock != Long.MIN_VALUE) {
+							constructor.processExpiredSessions(batch.initialClock);
+						}
+						for (int i = 0; i < batch.size; i++) {
+							constructor.CreateSessionOrAppendPage(batch.ipHighs[i], batch.ipLows[i],
+									batch.visitedPages[i], batch.refUrls[i], batch.visitTimes[i]);
+							if (batch.clocks[i] != Long.MIN_VALUE) {
+								constructor.processExpiredSessions(batch.clocks[i]);
+							}
+						}
+					} catch (RuntimeException | Error exception) {
+						failure = exception;
+					}
+				}
+			} catch (InterruptedException exception) {
+				failure = exception;
+			}
+		}
+	}
+
+	/**
+	 * Temporary file of the sequences of a single shard, each sequence is
+	 * stored as its length followed by its page ids.
+	 */
+	private static class PartFile implements SequenceSink {
+		private File file;
+		private DataOutputStream output;
+
+		private PartFile(String prefix) throws IOException {
+			file = File.createTempFile(prefix, ".part");
+			file.deleteOnExit();
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		}
+
+		@Override
+		public void write(PageIdList pages) {
+			try {
+				output.writeInt(pages.size());
+				for (int i = 0; i < pages.size(); i++) {
+					output.writeInt(pages.getId(i));
+				}
+			} catch (IOException exception) {
+				throw new UncheckedIOException(exception);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			output.close();
+		}
+
+		private void copyTo(SequenceSink sink) throws IOException {
+			try (DataInputStream input = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+				while (true) {
+					int length;
+					try {
+						length = input.readInt();
+					} catch (EOFException exception) {
+						break;
+					}
+					PageIdList pages = new PageIdList(length);
+					for (int i = 0; i < length; i++) {
+						pages.addId(input.readInt());
+					}
+					sink.write(pages);
+				}
+			}
+		}
+
+		private void delete() {
+			file.delete();
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 8) {
+			System.out.print("Usage: ShardedSessionReconstructor <heuristic> <inputDir> <topologyFile> <outputFile> ");
+			System.out.println("<runMode> <domainName> <shardCount>");
+			System.out.println("Where <heuristic> is one of 'TO', 'SSRA', 'CSRA', 'IP', 'NO'");
+			System.out.println("and <runMode> is either 'topology' or 'referrer'");
+			return;
+		}
+
+		final String heuristic		= args[1];
+		String inputFolder			= args[2];
+		String topologyFile			= args[3];
+		String outputFile			= args[4];
+		final Mode runningMode		= "referrer".equals(args[5]) ? Mode.REFERRERMODE : Mode.TOPOLOGYMODE;
+		final String domainName		= args[6];
+		int shardCount				= Integer.parseInt(args[7]);
+
+		Supplier<SessionConstructor> factory = () -> {
+			switch (heuristic) {
+			case "TO":
+				return new TimeOriented(domainName, false);
+			case "SSRA":
+				return new SmartSRA(domainName, runningMode, false);
+			case "CSRA":
+				return new CompleteSRA(domainName, runningMode, Integer.MAX_VALUE, false);
+			case "IP":
+				return new IntegerProgramming(domainName, runningMode, Integer.MAX_VALUE, false);
+			case "NO":
+				return new NavigationOriented(domainName, Mode.TOPOLOGYMODE, false);
+			default:
+				throw new IllegalArgumentException("Unknown heuristic: " + heuristic);
+			}
+		};
+
+		try {
+			ShardedSessionReconstructor reconstructor =
+					new ShardedSessionReconstructor(domainName, shardCount, factory);
+			reconstructor.setSequenceSink(SequenceSink.open(outputFile));
+			Topology topology = new Topology();
+			if (!"TO".equals(heuristic)) {
+				System.out.println("Topology File: " + topologyFile);
+				topology.readTopology(topologyFile);
+			}
+			reconstructor.setTopology(topology);
+			reconstructor.ProcessFiles(inputFolder);
+			reconstructor.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
+	}
+}
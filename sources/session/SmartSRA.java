@@ -1,17 +1,37 @@
 package session;
 
 import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import core.PageIdList;
+import core.PrefixSequence;
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 
 public class SmartSRA extends LinkBasedConstructor {
 
+	/**
+	 * The algorithm that finds the layers of the session.
+	 */
+	public enum Engine {
+		/**
+		 * Finds the pages without referrer by scanning the remaining pages and
+		 * removes them from the session in each round.
+		 */
+		PAGE_REMOVAL,
+		/**
+		 * Counts the referrers of each page once and peels the layers with a
+		 * queue, the session is left untouched.
+		 */
+		LAYERED;
+	}
+
 	private static Map<String, Mode> modeMap;
 
 	static {
@@ -29,8 +49,35 @@ public class SmartSRA extends LinkBasedConstructor {
 	 * @param skipSimpleSessions. Flag to skip simple sessions ie where input is
 	 *                            already path on graph.
 	 */
+	private Engine engine;
+
 	public SmartSRA(String domainName, Mode runningMode, boolean skipSimpleSessions) {
 		super(domainName, runningMode, skipSimpleSessions);
+		this.engine = Engine.LAYERED;
+	}
+
+	/**
+	 * Sets the algorithm that finds the layers of the session, both algorithms
+	 * construct the same sequences.
+	 * 
+	 * @param engine the algorithm to find the layers
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+		clearShapeCache();
+	}
+
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * The pages are removed from the session as they are put into sequences
+	 * by {@link Engine#PAGE_REMOVAL}.
+	 */
+	@Override
+	public boolean modifiesSession() {
+		return engine == Engine.PAGE_REMOVAL;
 	}
 
 	@Override
@@ -40,10 +87,17 @@ public class SmartSRA extends LinkBasedConstructor {
 	}
 
 	@Override
-	public void processSession(Session candidateSession,
+	protected void constructSequences(Session candidateSession,
 			List<Sequence> outputSequencesForPrediction,
 			boolean skipSimpleSessions,
 			float penalty) {
+		if (engine == Engine.LAYERED) {
+			SessionLinkIndex links = createLinkIndex(candidateSession);
+			if (!links.isSimpleSession() || !skipSimpleSessions) {
+				processLayers(candidateSession, links, outputSequencesForPrediction, penalty);
+			}
+			return;
+		}
 		if (isSimpleSession(candidateSession) && skipSimpleSessions) {
 			return;
 		}
@@ -51,38 +105,38 @@ public class SmartSRA extends LinkBasedConstructor {
 		ArrayList<Sequence> outputSequences = new ArrayList<Sequence>();
 		while (!candidateSession.isEmpty()) {
 			ArrayList<Sequence> tempSequences = new ArrayList<Sequence>();
-			List<String> items = candidateSession.getSequence();
-			ArrayList<String> pagesWithoutReferrer = new ArrayList<String>();
+			PageIdList items = candidateSession.getSequence();
+			PageIdList pagesWithoutReferrer = new PageIdList();
 
 			// Find the set of pages which does not have any referrer in the current
 			// session.
 			for (int i = 0; i < items.size(); i++) {
-				String toPage = items.get(i);
+				int toPage = items.getId(i);
 				boolean startPageFlag = true;
 				for (int j = 0; j < i; j++) {
-					String fromPage = items.get(j);
+					int fromPage = items.getId(j);
 					if (isReferrer(fromPage, toPage, candidateSession)) {
 						startPageFlag = false;
 						break;
 					}
 				}
 				if (startPageFlag) {
-					pagesWithoutReferrer.add(toPage);
+					pagesWithoutReferrer.addId(toPage);
 				}
 			} // End of First For!.. // we find startPages...
 
 			// Check if the new session set is empty.
 			if (outputSequences.isEmpty()) {
 				for (int i = 0; i < pagesWithoutReferrer.size(); i++) {
-					Sequence tempSequence = new Sequence(pagesWithoutReferrer.get(i));
+					Sequence tempSequence = new Sequence(pagesWithoutReferrer.getId(i));
 					tempSequences.add(tempSequence);
 				}
 			} else {
 				for (int i = 0; i < pagesWithoutReferrer.size(); i++) {
-					String currentPage = pagesWithoutReferrer.get(i);
+					int currentPage = pagesWithoutReferrer.getId(i);
 					for (int j = 0; j < outputSequences.size(); j++) {
 						Sequence currentSequence = outputSequences.get(j);
-						String lastElement = currentSequence.getLastElement();
+						int lastElement = currentSequence.getLastPageId();
 						if (isReferrer(lastElement, currentPage, candidateSession)) {
 							Sequence tempSeq = currentSequence.copy();
 							tempSeq.setMaximal(true);
@@ -106,13 +160,13 @@ public class SmartSRA extends LinkBasedConstructor {
 
 			// Remove the processed pages from the candidate session.
 			for (int i = 0; i < pagesWithoutReferrer.size(); i++) {
-				candidateSession.removeItem(pagesWithoutReferrer.get(i));
+				candidateSession.removeItem(pagesWithoutReferrer.getId(i));
 			}
 		} // End of Whole While
 
 		for (int i = 0; i < outputSequences.size(); i++) {
 			if (outputSequences.get(i).getLength() >= 1 && outputSequences.get(i).isMaximal()) {
-				outputStream.println(outputSequences.get(i));
+				sequenceSink.write(outputSequences.get(i).getSequence());
 				outputSequences.get(i).setPenalty(penalty);
 				outputSequencesForPrediction.add(outputSequences.get(i));
 			}
@@ -120,6 +174,100 @@ public class SmartSRA extends LinkBasedConstructor {
 		}
 	}
 
+	/**
+	 * Constructs the same sequences as {@link Engine#PAGE_REMOVAL} without
+	 * modifying the session. A page is in layer r if all of its referrers at
+	 * earlier positions are in the layers before r, which are exactly the
+	 * pages without referrer in round r of the page removal. The number of
+	 * such referrers is counted once per page, and the next layer is found by
+	 * decrementing the counts of the pages referred by the current layer.
+	 */
+	private void processLayers(Session candidateSession, SessionLinkIndex links,
+			List<Sequence> outputSequencesForPrediction, float penalty) {
+		PageIdList items = candidateSession.getSequence();
+		int size = items.size();
+		int[] referrerCount = new int[size];
+		int[][] referred = new int[size][];
+		int[] referredCount = new int[size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < i; j++) {
+				if (links.isReferrer(j, i)) {
+					referrerCount[i]++;
+					if (referred[j] == null) {
+						referred[j] = new int[4];
+					} else if (referredCount[j] == referred[j].length) {
+						referred[j] = Arrays.copyOf(referred[j], referredCount[j] * 2);
+					}
+					referred[j][referredCount[j]++] = i;
+				}
+			}
+		}
+
+		int[] layer = new int[size];
+		int layerSize = 0;
+		for (int i = 0; i < size; i++) {
+			if (referrerCount[i] == 0) {
+				layer[layerSize++] = i;
+			}
+		}
+		int[] nextLayer = new int[size];
+		List<PrefixSequence> outputSequences = new ArrayList<>();
+		boolean isFirstLayer = true;
+		while (layerSize > 0) {
+			List<PrefixSequence> tempSequences = new ArrayList<>();
+			if (isFirstLayer) {
+				for (int i = 0; i < layerSize; i++) {
+					tempSequences.add(new PrefixSequence(items.getId(layer[i]), 0));
+				}
+				isFirstLayer = false;
+			} else {
+				for (int i = 0; i < layerSize; i++) {
+					int currentPage = items.getId(layer[i]);
+					for (int j = 0; j < outputSequences.size(); j++) {
+						PrefixSequence currentSequence = outputSequences.get(j);
+						if (links.isReferrerPage(currentSequence.getLastPageId(), layer[i])) {
+							tempSequences.add(currentSequence.extend(currentPage, 0));
+							currentSequence.setMaximal(false); // since extended
+						}
+					}
+				}
+			}
+			// Add the maximal sequences that are not extended in this layer.
+			for (int i = 0; i < outputSequences.size(); i++) {
+				if (outputSequences.get(i).isMaximal()) {
+					tempSequences.add(outputSequences.get(i));
+				}
+			}
+			outputSequences = tempSequences;
+
+			// Find the next layer in page order.
+			int nextLayerSize = 0;
+			for (int i = 0; i < layerSize; i++) {
+				int from = layer[i];
+				for (int k = 0; k < referredCount[from]; k++) {
+					int to = referred[from][k];
+					if (--referrerCount[to] == 0) {
+						nextLayer[nextLayerSize++] = to;
+					}
+				}
+			}
+			Arrays.sort(nextLayer, 0, nextLayerSize);
+			int[] swap = layer;
+			layer = nextLayer;
+			nextLayer = swap;
+			layerSize = nextLayerSize;
+		}
+
+		for (int i = 0; i < outputSequences.size(); i++) {
+			if (outputSequences.get(i).getLength() >= 1 && outputSequences.get(i).isMaximal()) {
+				Sequence maximalSequence = outputSequences.get(i).toSequence();
+				sequenceSink.write(maximalSequence.getSequence());
+				maximalSequence.setPenalty(penalty);
+				outputSequencesForPrediction.add(maximalSequence);
+			}
+		}
+	}
+
 	public static void main(String[] args) {
 		if (args.length != 6) {
 			System.out.println("Usage: SmartSRA <inputDir> <topologyFile> <outputFile> <runMode> <domainName>");
@@ -136,12 +284,16 @@ public class SmartSRA extends LinkBasedConstructor {
 		SmartSRA smartSRA = new SmartSRA(domainName, modeMap.get(runningMode), false);
 
 		try {
-			outputStream = new PrintStream(outputFile);
+			smartSRA.setSequenceSink(SequenceSink.open(outputFile));
 			smartSRA.loadTopology(topologyFile);
 		} catch (FileNotFoundException exception) {
 			exception.printStackTrace();
 		}
 		smartSRA.ProcessFiles(inputFolder);
-		outputStream.close();
+		try {
+			smartSRA.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
 	}
 }
\ No newline at end of file
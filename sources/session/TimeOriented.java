@@ -1,18 +1,15 @@
 package session;
 
 import java.io.FileNotFoundException;
-import java.io.PrintStream;
-import java.util.HashSet;
+import java.io.IOException;
 import java.util.List;
-import java.util.Set;
 
 import core.Sequence;
+import core.SequenceSink;
 import core.Session;
 
 public class TimeOriented extends SessionConstructor {
 
-	private static PrintStream outputStream;
-	
 	/**
 	 * Session duration threshold for time oriented heuristics in minutes.
 	 */
@@ -31,23 +28,15 @@ public class TimeOriented extends SessionConstructor {
 	@Override
 	public void processSession(Session candidateSession,
 			List<Sequence> sequences, boolean skipSimpleSessions, float penalty) {
-		int lastIndex = candidateSession.getSequence().size();		
-		for (int i = lastIndex; i <= lastIndex; i++) {
-			StringBuffer prefix = new StringBuffer("");
-			for (int j = 0; j < i; j++ ) {
-				if (j != 0) {
-					prefix.append("-");
-				}
-				prefix.append(candidateSession.getSequence().get(j).trim());
-			}
-			sequences.add(new Sequence(prefix.toString(), penalty));
-		}
+		Sequence sequence = new Sequence(candidateSession.getSequence());
+		sequence.setPenalty(penalty);
+		sequences.add(sequence);
 	}
 
 	@Override
 	public void processSession(Session candidateSession, boolean skipSimpleSessions) {
 		if (!isSimpleSession(candidateSession) || !skipSimpleSessions) {
-			outputStream.println(candidateSession.getSequenceAsString());
+			sequenceSink.write(candidateSession.getSequence());
 		}
 	}
 
@@ -65,39 +54,29 @@ public class TimeOriented extends SessionConstructor {
 	}
 
 	@Override
-	public void CreateSessionOrAppendPage(String ipNo, String visitedPage, String refUrl, long visitTime) {
-		if(ipToSessions.containsKey(ipNo)) {
-			Session existingSession = ipToSessions.get(ipNo);
+	public void CreateSessionOrAppendPage(long ipHigh, long ipLow, int visitedPage, int refUrl, long visitTime) {
+		Session existingSession = ipToSessions.get(ipHigh, ipLow);
+		if(existingSession != null) {
 			if(isTimeCriteriaSatisfied(existingSession, visitTime)) {
 				existingSession.appendPage(visitedPage, refUrl, visitTime);
-				ipToSessions.put(ipNo, existingSession);
 			} else {
-				Session expiredSession = ipToSessions.get(ipNo);
-				processSession(expiredSession, skipSimpleSessions);
+				processSession(existingSession, skipSimpleSessions);
 				numberOfTOSessions ++;
 				//System.out.println("Constructed Session: " + numberOfTOSessions);
-				ipToSessions.put(ipNo, new Session(ipNo, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions));
+				startSession(new Session(ipHigh, ipLow, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions),
+						DURATION_THRESHOLD);
 			}
 		} else {
 			numberOfTOSessions++;
 			//System.out.println("Constructed Session: " + numberOfTOSessions);
-			ipToSessions.put(ipNo, new Session(ipNo, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions));
+			startSession(new Session(ipHigh, ipLow, visitedPage, visitTime, visitTime, refUrl, numberOfTOSessions),
+					DURATION_THRESHOLD);
 		}
 	}
 
 	@Override
 	public void processExpiredSessions(long currentTime) {
-		Set<String> markToBeRemoved = new HashSet<>();
-		for (String ipAdress : ipToSessions.keySet()) {	
-			Session expiredSession 	= ipToSessions.get(ipAdress);
-			if((currentTime - expiredSession.getInitalTime()) > DURATION_THRESHOLD) {
-				processSession(expiredSession, skipSimpleSessions);
-				markToBeRemoved.add(ipAdress);
-			}
-		}
-		for (String ip : markToBeRemoved) {
-			ipToSessions.remove(ip);
-		}
+		expireSessions(currentTime, DURATION_THRESHOLD);
 	}
 
 	public static void main(String[] args) {
@@ -113,11 +92,15 @@ public class TimeOriented extends SessionConstructor {
 		TimeOriented timeOriented = new TimeOriented(domainName, false);
 		
 		try {
-			outputStream = new PrintStream(outputFile);
+			timeOriented.setSequenceSink(SequenceSink.open(outputFile));
 		} catch (FileNotFoundException exception) {
 			exception.printStackTrace();
 		}
 		timeOriented.ProcessFiles(inputFolder);
-	    outputStream.close();	
+		try {
+			timeOriented.getSequenceSink().close();
+		} catch (IOException exception) {
+			exception.printStackTrace();
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,277 @@
+package topology;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import core.PageDictionary;
+
+/**
+ * Immutable link structure in compressed sparse row form. The links of the
+ * page with local id p are {@code targets[offsets[p] .. offsets[p + 1])} in
+ * ascending order, so the out-degree is a subtraction and a link check is a
+ * binary search that does not allocate.
+ *
+ * The arrays are either built on the heap by {@link Topology}, where the
+ * local ids are the ids of {@link PageDictionary#getShared()}, or mapped
+ * from a snapshot file written by {@link #writeSnapshot(String)}:
+ *
+ * <pre>
+ * magic       "CSRATOP1"
+ * page count  int
+ * link count  int
+ * pages       int byte length + UTF-8 bytes, in local id order
+ * padding     up to a multiple of 4 bytes
+ * offsets     page count + 1 ints
+ * targets     link count ints
+ * </pre>
+ *
+ * The pages of a snapshot are interned when it is mapped, and the shared ids
+ * are translated to the local ids of the snapshot on every lookup.
+ *
+ * @author Murat Ali Bayir
+ */
+public class CsrTopology {
+
+	/**
+	 * The first bytes of a topology snapshot.
+	 */
+	public static final byte[] MAGIC = "CSRATOP1".getBytes(StandardCharsets.US_ASCII);
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private IntBuffer offsets;
+	private IntBuffer targets;
+	private int pageCount;
+
+	/**
+	 * The local id of each shared id, null if the ids are the same.
+	 */
+	private int[] sharedToLocal;
+
+	/**
+	 * The shared id of each local id, null if the ids are the same.
+	 */
+	private int[] localToShared;
+
+	CsrTopology(int[] offsets, int[] targets) {
+		this(IntBuffer.wrap(offsets), IntBuffer.wrap(targets), offsets.length - 1, null, null);
+	}
+
+	private CsrTopology(IntBuffer offsets, IntBuffer targets, int pageCount, int[] sharedToLocal,
+			int[] localToShared) {
+		this.offsets = offsets;
+		this.targets = targets;
+		this.pageCount = pageCount;
+		this.sharedToLocal = sharedToLocal;
+		this.localToShared = localToShared;
+	}
+
+	private int toLocal(int page) {
+		if (page < 0) {
+			return -1;
+		}
+		if (sharedToLocal == null) {
+			return page < pageCount ? page : -1;
+		}
+		return page < sharedToLocal.length ? sharedToLocal[page] : -1;
+	}
+
+	private int toShared(int page) {
+		return localToShared == null ? page : localToShared[page];
+	}
+
+	/**
+	 * @return true if the page with id {@code from} has link towards the page with id {@code to}.
+	 */
+	public boolean checkLink(int from, int to) {
+		int localFrom = toLocal(from);
+		int localTo = toLocal(to);
+		if (localFrom < 0 || localTo < 0) {
+			return false;
+		}
+		int low = offsets.get(localFrom);
+		int high = offsets.get(localFrom + 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int target = targets.get(middle);
+			if (target < localTo) {
+				low = middle + 1;
+			} else if (target > localTo) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of pages that the page with id {@code from} has link towards.
+	 */
+	public int getOutDegree(int from) {
+		int localFrom = toLocal(from);
+		return localFrom < 0 ? 0 : offsets.get(localFrom + 1) - offsets.get(localFrom);
+	}
+
+	/**
+	 * @return the ids of the pages that the page with id {@code from} has link
+	 *         towards, in ascending order of their local ids.
+	 */
+	public int[] getLinks(int from) {
+		int localFrom = toLocal(from);
+		if (localFrom < 0) {
+			return new int[0];
+		}
+		int start = offsets.get(localFrom);
+		int[] links = new int[offsets.get(localFrom + 1) - start];
+		for (int i = 0; i < links.length; i++) {
+			links[i] = toShared(targets.get(start + i));
+		}
+		return links;
+	}
+
+	/**
+	 * @return the id of the page at {@code index} of the links of the page with
+	 *         id {@code from}, where {@code index} is less than its out-degree.
+	 */
+	public int getLink(int from, int index) {
+		return toShared(targets.get(offsets.get(toLocal(from)) + index));
+	}
+
+	/**
+	 * @return the number of pages with a local id, which is an upper bound of
+	 *         the pages with links.
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * @return the shared id of the page with local id {@code page}.
+	 */
+	public int getPage(int page) {
+		return toShared(page);
+	}
+
+	/**
+	 * @return the number of links.
+	 */
+	public int getLinkCount() {
+		return offsets.get(pageCount);
+	}
+
+	/**
+	 * @return true if the offsets and the links are in a mapped snapshot file
+	 *         rather than on the heap.
+	 */
+	public boolean isMapped() {
+		return targets.isDirect();
+	}
+
+	/**
+	 * Writes the topology in the snapshot format that can be mapped by
+	 * {@link #mapSnapshot(String)}.
+	 *
+	 * @param fileName the name of the snapshot file
+	 * @throws IOException if the file can not be written
+	 */
+	public void writeSnapshot(String fileName) throws IOException {
+		PageDictionary dictionary = PageDictionary.getShared();
+		try (DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE))) {
+			output.write(MAGIC);
+			output.writeInt(pageCount);
+			output.writeInt(getLinkCount());
+			for (int i = 0; i < pageCount; i++) {
+				byte[] page = dictionary.getPage(toShared(i)).getBytes(StandardCharsets.UTF_8);
+				output.writeInt(page.length);
+				output.write(page);
+			}
+			while (output.size() % Integer.BYTES != 0) {
+				output.write(0);
+			}
+			for (int i = 0; i <= pageCount; i++) {
+				output.writeInt(offsets.get(i));
+			}
+			for (int i = 0; i < getLinkCount(); i++) {
+				output.writeInt(targets.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Maps a snapshot written by {@link #writeSnapshot(String)}. Only the pages
+	 * are read, the offsets and the links stay in the mapped file.
+	 *
+	 * @param fileName the name of the snapshot file
+	 * @return the topology of the snapshot
+	 * @throws IOException if the file can not be read or is not a snapshot
+	 */
+	public static CsrTopology mapSnapshot(String fileName) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		byte[] magic = new byte[MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException(fileName + " is not a topology snapshot");
+		}
+		int pageCount = buffer.getInt();
+		int linkCount = buffer.getInt();
+
+		PageDictionary dictionary = PageDictionary.getShared();
+		int[] localToShared = new int[pageCount];
+		boolean isIdentity = true;
+		byte[] page = new byte[256];
+		for (int i = 0; i < pageCount; i++) {
+			int length = buffer.getInt();
+			if (length > page.length) {
+				page = new byte[Math.max(length, page.length * 2)];
+			}
+			buffer.get(page, 0, length);
+			localToShared[i] = dictionary.getId(new String(page, 0, length, StandardCharsets.UTF_8));
+			isIdentity &= localToShared[i] == i;
+		}
+		buffer.position((buffer.position() + Integer.BYTES - 1) / Integer.BYTES * Integer.BYTES);
+		IntBuffer offsets = buffer.slice().limit((pageCount + 1) * Integer.BYTES).asIntBuffer();
+		buffer.position(buffer.position() + (pageCount + 1) * Integer.BYTES);
+		IntBuffer targets = buffer.slice().limit(linkCount * Integer.BYTES).asIntBuffer();
+
+		if (isIdentity) {
+			return new CsrTopology(offsets, targets, pageCount, null, null);
+		}
+		int[] sharedToLocal = new int[dictionary.size()];
+		Arrays.fill(sharedToLocal, -1);
+		for (int i = 0; i < pageCount; i++) {
+			sharedToLocal[localToShared[i]] = i;
+		}
+		return new CsrTopology(offsets, targets, pageCount, sharedToLocal, localToShared);
+	}
+
+	/**
+	 * @return true if the file starts with {@link #MAGIC}.
+	 */
+	public static boolean isSnapshot(String fileName) throws IOException {
+		try (InputStream input = new FileInputStream(fileName)) {
+			byte[] head = new byte[MAGIC.length];
+			int length = 0;
+			int read;
+			while (length < head.length && (read = input.read(head, length, head.length - length)) > 0) {
+				length += read;
+			}
+			return length == head.length && Arrays.equals(head, MAGIC);
+		}
+	}
+}
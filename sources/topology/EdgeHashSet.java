@@ -0,0 +1,141 @@
+package topology;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of links for fast membership checks. Each link is packed
+ * into a single long, the page id it starts from in the high half and the
+ * page id it points to in the low half, and the keys are stored in an open
+ * addressing table with linear probing.
+ *
+ * An optional blocked Bloom filter is checked first. All bits of a link are
+ * in the same word, so a missing link is usually rejected with a single
+ * memory access without touching the larger table.
+ *
+ * The set is never modified after construction, so it can be read by any
+ * number of threads without synchronization.
+ *
+ * @author Murat Ali Bayir
+ */
+public class EdgeHashSet {
+
+	/**
+	 * The least number of Bloom filter bits per link, the filter is rounded up
+	 * to a power of two words.
+	 */
+	public static int BLOOM_BITS_PER_LINK = 16;
+
+	private static final long EMPTY = -1L;
+
+	private final long[] keys;
+	private final int mask;
+	private final long[] bloom;
+	private final int bloomMask;
+	private final int size;
+
+	/**
+	 * @param links the links to index
+	 * @param useBloomFilter whether a Bloom filter is put in front of the table
+	 */
+	public EdgeHashSet(CsrTopology links, boolean useBloomFilter) {
+		int linkCount = links.getLinkCount();
+		int capacity = Integer.highestOneBit(Math.max(linkCount, 1) * 2 - 1) << 1;
+		keys = new long[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+		if (useBloomFilter) {
+			long bits = Math.max((long) linkCount * BLOOM_BITS_PER_LINK, 64);
+			int words = (int) Math.min(Long.highestOneBit((bits + 63) / 64 * 2 - 1), 1 << 30);
+			bloom = new long[words];
+			bloomMask = bloom.length - 1;
+		} else {
+			bloom = null;
+			bloomMask = 0;
+		}
+
+		int count = 0;
+		for (int i = 0; i < links.getPageCount(); i++) {
+			int from = links.getPage(i);
+			for (int to : links.getLinks(from)) {
+				long key = pack(from, to);
+				long hash = mix(key);
+				int slot = (int) hash & mask;
+				while (keys[slot] != EMPTY && keys[slot] != key) {
+					slot = (slot + 1) & mask;
+				}
+				if (keys[slot] == EMPTY) {
+					keys[slot] = key;
+					count++;
+				}
+				if (bloom != null) {
+					bloom[bloomWord(hash)] |= bloomBits(hash);
+				}
+			}
+		}
+		size = count;
+	}
+
+	private static long pack(int from, int to) {
+		return ((long) from << 32) | (to & 0xFFFFFFFFL);
+	}
+
+	private static long mix(long key) {
+		key ^= (key >>> 33);
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= (key >>> 33);
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= (key >>> 33);
+		return key;
+	}
+
+	/**
+	 * @return the Bloom filter word of a link, chosen by the bits 32 to 62 of
+	 *         the hash, the slot of the table is chosen by the bits 0 to 30.
+	 */
+	private int bloomWord(long hash) {
+		return (int) (hash >>> 32) & bloomMask;
+	}
+
+	/**
+	 * @return three bits of a word chosen by the bits 46 to 63 of a second
+	 *         hash, which mix all bits of the hash instead of repeating the
+	 *         bits of the word or the slot.
+	 */
+	private static long bloomBits(long hash) {
+		long bloomHash = hash * 0x9E3779B97F4A7C15L;
+		return (1L << (bloomHash >>> 46)) | (1L << (bloomHash >>> 52)) | (1L << (bloomHash >>> 58));
+	}
+
+	/**
+	 * @return true if the page with id {@code from} has link towards the page with id {@code to}.
+	 */
+	public boolean contains(int from, int to) {
+		if (from < 0 || to < 0) {
+			return false;
+		}
+		long key = pack(from, to);
+		long hash = mix(key);
+		if (bloom != null) {
+			long bits = bloomBits(hash);
+			if ((bloom[bloomWord(hash)] & bits) != bits) {
+				return false;
+			}
+		}
+		int slot = (int) hash & mask;
+		long current;
+		while ((current = keys[slot]) != EMPTY) {
+			if (current == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of links in the set.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -5,62 +5,274 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Hashtable;
+import java.util.Map;
 import java.util.Set;
 
+import core.PageDictionary;
+
+/**
+ * Link structure of the web site. Pages are keyed by the ids of
+ * {@link PageDictionary#getShared()}.
+ *
+ * The links are kept in a {@link CsrTopology}. The pairs added by
+ * {@link #addPair(int, int)} are collected per page, the rows of the changed
+ * pages answer the queries until they are merged into the compressed rows.
+ * A merge rebuilds all rows, so it is done by {@link #getLinks()} or once
+ * the queries since the last change have paid for it, and adding pairs
+ * between queries stays cheap. The links are
+ * checked with an {@link EdgeHashSet} built on the first check after the
+ * links change, except for a memory mapped snapshot, which is searched in
+ * place unless {@link #EDGE_HASH_SNAPSHOTS} is set.
+ */
 public class Topology {
-	
-	private Hashtable<String, HashSet<String>> topology;
-	
+
+	/**
+	 * Whether {@link #checkLink(int, int)} uses an {@link EdgeHashSet} instead
+	 * of the binary search in the compressed rows.
+	 */
+	public static boolean EDGE_HASH_INDEX = true;
+
+	/**
+	 * Whether the {@link EdgeHashSet} is also built for a memory mapped
+	 * snapshot, which copies every link of the snapshot to the heap.
+	 */
+	public static boolean EDGE_HASH_SNAPSHOTS = false;
+
+	/**
+	 * Whether the {@link EdgeHashSet} has a Bloom filter in front of it.
+	 */
+	public static boolean BLOOM_FILTER = true;
+
+	private volatile CsrTopology links;
+	private volatile EdgeHashSet edges;
+
+	/**
+	 * The sorted links of the pages changed since the last merge, they
+	 * replace the rows of {@link #links}.
+	 */
+	private Map<Integer, int[]> changedRows;
+	private volatile boolean hasChangedRows;
+
+	/**
+	 * The number of queries answered from the changed rows since the last
+	 * change, the rows are merged when it reaches the cost of the merge.
+	 */
+	private long pendingQueries;
+
+	/**
+	 * The pages given a row by {@link #addPair(int, int)} or a line of a text
+	 * topology, including the lines without links.
+	 */
+	private BitSet rowPages;
+	private PageDictionary dictionary;
+
 	public Topology() {
-		topology = new Hashtable<>();
+		links = new CsrTopology(new int[1], new int[0]);
+		changedRows = new HashMap<>();
+		rowPages = new BitSet();
+		dictionary = PageDictionary.getShared();
 	}
-	
+
 	public void addPair(String from, String to) {
-		if (topology.containsKey(from)) {
-			topology.get(from).add(to);
-		} else {
-			HashSet<String> toSet = new HashSet<>();
-			toSet.add(to);
-			topology.put(from, toSet);
+		addPair(dictionary.getId(from), dictionary.getId(to));
+	}
+
+	public synchronized void addPair(int from, int to) {
+		int[] row = changedRows.get(from);
+		if (row == null) {
+			row = links.getLinks(from);
+			Arrays.sort(row);
 		}
+		int index = Arrays.binarySearch(row, to);
+		if (index < 0) {
+			index = -index - 1;
+			int[] newRow = new int[row.length + 1];
+			System.arraycopy(row, 0, newRow, 0, index);
+			newRow[index] = to;
+			System.arraycopy(row, index, newRow, index + 1, row.length - index);
+			row = newRow;
+		}
+		changedRows.put(from, row);
+		rowPages.set(from);
+		hasChangedRows = true;
+		pendingQueries = 0;
 	}
 
-	public Set<String> getKeySet() {
-		return topology.keySet();
+	/**
+	 * @return the links, the changed rows are merged first if there is any.
+	 */
+	public CsrTopology getLinks() {
+		return hasChangedRows ? mergeChangedRows() : links;
 	}
-	
+
+	private synchronized CsrTopology mergeChangedRows() {
+		if (!hasChangedRows) {
+			return links;
+		}
+		CsrTopology current = links;
+		int pageCount = dictionary.size();
+		int[] offsets = new int[pageCount + 1];
+		for (int page = 0; page < pageCount; page++) {
+			int[] row = changedRows.get(page);
+			offsets[page + 1] = offsets[page] + (row != null ? row.length : current.getOutDegree(page));
+		}
+		int[] targets = new int[offsets[pageCount]];
+		for (int page = 0; page < pageCount; page++) {
+			int[] row = changedRows.get(page);
+			if (row == null) {
+				row = current.getLinks(page);
+				Arrays.sort(row);
+			}
+			System.arraycopy(row, 0, targets, offsets[page], row.length);
+		}
+		links = new CsrTopology(offsets, targets);
+		edges = null;
+		changedRows.clear();
+		hasChangedRows = false;
+		return links;
+	}
+
+	/**
+	 * @return the changed row of the page with id {@code from}, null if the
+	 *         row is not changed or the changed rows are merged by this query.
+	 */
+	private synchronized int[] getChangedRow(int from) {
+		if (!hasChangedRows) {
+			return null;
+		}
+		if (++pendingQueries > (long) links.getPageCount() + links.getLinkCount() + changedRows.size()) {
+			mergeChangedRows();
+			return null;
+		}
+		return changedRows.get(from);
+	}
+
+	/**
+	 * @return the ids of the pages that have link towards at least one page,
+	 *         and the pages listed without links in a text topology. A
+	 *         snapshot does not keep the pages without links.
+	 */
+	public Set<Integer> getKeySet() {
+		CsrTopology current = getLinks();
+		Set<Integer> pages = new HashSet<>();
+		for (int i = 0; i < current.getPageCount(); i++) {
+			int page = current.getPage(i);
+			if (current.getOutDegree(page) > 0) {
+				pages.add(page);
+			}
+		}
+		synchronized (this) {
+			for (int page = rowPages.nextSetBit(0); page >= 0; page = rowPages.nextSetBit(page + 1)) {
+				pages.add(page);
+			}
+		}
+		return pages;
+	}
+
 	public boolean checkLink(String from, String to) {
-		return topology.containsKey(from) && topology.get(from).contains(to);
+		return checkLink(dictionary.lookup(from), dictionary.lookup(to));
+	}
+
+	public boolean checkLink(int from, int to) {
+		if (hasChangedRows) {
+			int[] row = getChangedRow(from);
+			if (row != null) {
+				return Arrays.binarySearch(row, to) >= 0;
+			}
+		}
+		// The rows that are not changed are the same in the merged links.
+		CsrTopology currentLinks = links;
+		if (!EDGE_HASH_INDEX || (currentLinks.isMapped() && !EDGE_HASH_SNAPSHOTS)) {
+			return currentLinks.checkLink(from, to);
+		}
+		EdgeHashSet current = edges;
+		if (current == null) {
+			current = buildEdges();
+		}
+		return current.contains(from, to);
+	}
+
+	private synchronized EdgeHashSet buildEdges() {
+		if (edges == null) {
+			edges = new EdgeHashSet(links, BLOOM_FILTER);
+		}
+		return edges;
 	}
 
 	public HashSet<String> getNeighBours(String from) {
-		if (topology.containsKey(from)) {
-			return topology.get(from);
-		} else {
-			return new HashSet<>();
+		int page = dictionary.lookup(from);
+		int[] row = hasChangedRows ? getChangedRow(page) : null;
+		HashSet<String> result = new HashSet<>();
+		for (int neighbour : row != null ? row : links.getLinks(page)) {
+			result.add(dictionary.getPage(neighbour));
 		}
+		return result;
 	}
 
+	/**
+	 * @param from the id of the page
+	 * @return the number of pages that {@code from} has link towards.
+	 */
+	public int getOutDegree(int from) {
+		int[] row = hasChangedRows ? getChangedRow(from) : null;
+		return row != null ? row.length : links.getOutDegree(from);
+	}
+
+	/**
+	 * Reads the topology either from a snapshot written by
+	 * {@link CsrTopology#writeSnapshot(String)}, which is memory mapped, or
+	 * from a text file where each line contains a page followed by the pages it
+	 * has link towards, separated by ','. A line replaces the links of its page.
+	 *
+	 * @param fileName the name of the topology file
+	 */
 	public void readTopology(String fileName) {
+		try {
+			if (CsrTopology.isSnapshot(fileName)) {
+				CsrTopology snapshot = CsrTopology.mapSnapshot(fileName);
+				if (getLinks().getLinkCount() == 0) {
+					synchronized (this) {
+						links = snapshot;
+						edges = null;
+					}
+				} else {
+					for (int i = 0; i < snapshot.getPageCount(); i++) {
+						int page = snapshot.getPage(i);
+						int[] neighbours = snapshot.getLinks(page);
+						if (neighbours.length > 0 || getOutDegree(page) > 0) {
+							setLinks(page, neighbours);
+						}
+					}
+					getLinks();
+				}
+				return;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
 		FileInputStream fileStream = null;
 		DataInputStream dataInputStream = null;
 		BufferedReader reader = null;
 		String strLine = null;
-		
+
 		try {
 			fileStream = new FileInputStream(fileName);
 			dataInputStream = new DataInputStream(fileStream);
 			reader = new BufferedReader(new InputStreamReader(dataInputStream));
 			while ((strLine = reader.readLine()) != null) {
 				String[] pages = strLine.split(",");
-				String fromPage = pages[0];
-				HashSet<String> neighbours = new HashSet<String>();
+				int fromPage = dictionary.getId(pages[0]);
+				int[] neighbours = new int[pages.length - 1];
 				for(int i = 1; i < pages.length; i++) {
-					neighbours.add(pages[i]);
+					neighbours[i - 1] = dictionary.getId(pages[i]);
 				}
-				topology.put(fromPage, neighbours);
+				setLinks(fromPage, neighbours);
 			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -75,5 +287,47 @@ public class Topology {
 				e.printStackTrace();
 			}
 		}
+		getLinks();
+	}
+
+	/**
+	 * Replaces the links of the page with id {@code from}, which then has a
+	 * row even if it has no links.
+	 */
+	private synchronized void setLinks(int from, int[] neighbours) {
+		Arrays.sort(neighbours);
+		int length = 0;
+		for (int i = 0; i < neighbours.length; i++) {
+			if (length == 0 || neighbours[length - 1] != neighbours[i]) {
+				neighbours[length++] = neighbours[i];
+			}
+		}
+		changedRows.put(from, length == neighbours.length ? neighbours : Arrays.copyOf(neighbours, length));
+		rowPages.set(from);
+		hasChangedRows = true;
+		pendingQueries = 0;
+	}
+
+	/**
+	 * Converts a text topology to a snapshot that can be memory mapped.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.out.println("Usage: Topology <topologyFile> <snapshotFile>");
+			System.out.println("Where <topologyFile> is either a text topology or a snapshot");
+			return;
+		}
+		String topologyFile		= args[1];
+		String snapshotFile		= args[2];
+
+		Topology topology = new Topology();
+		topology.readTopology(topologyFile);
+		CsrTopology links = topology.getLinks();
+		try {
+			links.writeSnapshot(snapshotFile);
+			System.out.println("Pages: " + links.getPageCount() + " Links: " + links.getLinkCount());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 }
@@ -1,6 +1,7 @@
 package utils;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -51,4 +52,24 @@ public class Utils {
 		}
 		return nGramSet;
 	}
+
+	/**
+	 * Extract all n-grams of given sequence of items.
+	 * 
+	 * @param items  the items of the sequence
+	 * @param nGram  the length of n-grams
+	 * @return the set of n-grams extracted from {@code items} in 'Item{1}-Item{2}-...-Item{N}' form
+	 */
+	public static Set<String> getNGrams(List<String> items, int nGram) {
+		HashSet<String> nGramSet = new HashSet<String>();
+		for (int i = 0; i + nGram - 1 < items.size(); i++) {
+			StringBuilder itemBuffer = new StringBuilder(items.get(i));
+			for (int j = i + 1; j <= (i + nGram - 1); j++) {
+				itemBuffer.append("-");
+				itemBuffer.append(items.get(j));
+			}
+			nGramSet.add(itemBuffer.toString());
+		}
+		return nGramSet;
+	}
 }
\ No newline at end of file